@@ -0,0 +1,76 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Application context for the benchmarks: in-memory preferences and a temporary files directory.
+ * Each instance stands for a freshly installed app.
+ */
+class BenchmarkContext extends Context {
+    private final Map<String, SharedPreferences> preferences = new ConcurrentHashMap<>();
+    private final Resources resources = new Resources();
+    private final File filesDir;
+
+    private BenchmarkContext(File filesDir) {
+        this.filesDir = filesDir;
+    }
+
+    static BenchmarkContext create() throws IOException {
+        BenchmarkKeyStoreProvider.install();
+        final File filesDir = Files.createTempDirectory("flutter_secure_storage_benchmark").toFile();
+        filesDir.deleteOnExit();
+        return new BenchmarkContext(filesDir);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences existing = preferences.get(name);
+        if (existing == null) {
+            existing = new InMemorySharedPreferences();
+            final SharedPreferences raced = preferences.putIfAbsent(name, existing);
+            if (raced != null) {
+                existing = raced;
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public String getPackageName() {
+        return "com.it_nomads.fluttersecurestorage.benchmark";
+    }
+
+    @Override
+    public Resources getResources() {
+        return resources;
+    }
+
+    @Override
+    public Context createConfigurationContext(Configuration overrideConfiguration) {
+        return this;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return filesDir;
+    }
+
+    @Override
+    public File getNoBackupFilesDir() {
+        return filesDir;
+    }
+}
@@ -0,0 +1,363 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.security.KeyPairGeneratorSpec;
+import android.security.keystore.KeyGenParameterSpec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyPairGeneratorSpi;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.ProviderException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Stands in for the Android providers the plugin asks for by name: an in-memory "AndroidKeyStore"
+ * holding software RSA keys, the "AndroidKeyStoreBCWorkaround" RSA ciphers, and the
+ * "AES/CBC/PKCS7Padding" name Android uses for PKCS5 padding. Every cipher delegates to the JDK
+ * implementation, so the measured work is the same.
+ */
+final class BenchmarkKeyStoreProvider extends Provider {
+    private static final String KEYSTORE_PROVIDER_ANDROID = "AndroidKeyStore";
+    private static final String CIPHER_PROVIDER_ANDROID = "AndroidKeyStoreBCWorkaround";
+    private static final int RSA_KEY_SIZE = 2048;
+
+    private static final Map<String, KeyPair> keyPairs = new ConcurrentHashMap<>();
+    private static volatile boolean locked;
+    private static boolean installed;
+
+    private BenchmarkKeyStoreProvider(String name, String info) {
+        super(name, 1.0, info);
+    }
+
+    static synchronized void install() {
+        if (installed) {
+            return;
+        }
+
+        final BenchmarkKeyStoreProvider keyStore = new BenchmarkKeyStoreProvider(KEYSTORE_PROVIDER_ANDROID, "In-memory Android key store");
+        keyStore.putService(new SpiService(keyStore, "KeyStore", "AndroidKeyStore", InMemoryKeyStoreSpi::new));
+        keyStore.putService(new SpiService(keyStore, "KeyPairGenerator", "RSA", RsaKeyPairGeneratorSpi::new));
+        keyStore.putService(new SpiService(keyStore, "Cipher", "AES/CBC/PKCS7Padding", () -> new DelegatingCipherSpi("AES/CBC/PKCS5Padding", false)));
+        Security.addProvider(keyStore);
+
+        final BenchmarkKeyStoreProvider ciphers = new BenchmarkKeyStoreProvider(CIPHER_PROVIDER_ANDROID, "Android key store RSA ciphers");
+        ciphers.putService(new SpiService(ciphers, "Cipher", "RSA/ECB/PKCS1Padding", () -> new DelegatingCipherSpi("RSA/ECB/PKCS1Padding", true)));
+        ciphers.putService(new SpiService(ciphers, "Cipher", "RSA/ECB/OAEPPadding", () -> new DelegatingCipherSpi("RSA/ECB/OAEPPadding", true)));
+        Security.addProvider(ciphers);
+
+        installed = true;
+    }
+
+    /**
+     * While locked, the key store's RSA keys cannot be used, like on a device before its first unlock.
+     */
+    static void setLocked(boolean locked) {
+        BenchmarkKeyStoreProvider.locked = locked;
+    }
+
+    @FunctionalInterface
+    private interface SpiFunction {
+        Object create() throws Exception;
+    }
+
+    private static final class SpiService extends Service {
+        private final SpiFunction spi;
+
+        SpiService(Provider provider, String type, String algorithm, SpiFunction spi) {
+            super(provider, type, algorithm, BenchmarkKeyStoreProvider.class.getName(), null, null);
+            this.spi = spi;
+        }
+
+        @Override
+        public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+            try {
+                return spi.create();
+            } catch (Exception e) {
+                throw new NoSuchAlgorithmException(e);
+            }
+        }
+    }
+
+    private static final class InMemoryKeyStoreSpi extends KeyStoreSpi {
+        @Override
+        public Key engineGetKey(String alias, char[] password) {
+            final KeyPair keyPair = keyPairs.get(alias);
+            return keyPair != null ? keyPair.getPrivate() : null;
+        }
+
+        @Override
+        public Certificate[] engineGetCertificateChain(String alias) {
+            final Certificate certificate = engineGetCertificate(alias);
+            return certificate != null ? new Certificate[]{certificate} : null;
+        }
+
+        @Override
+        public Certificate engineGetCertificate(String alias) {
+            final KeyPair keyPair = keyPairs.get(alias);
+            return keyPair != null ? new PublicKeyCertificate(keyPair.getPublic()) : null;
+        }
+
+        @Override
+        public Date engineGetCreationDate(String alias) {
+            return keyPairs.containsKey(alias) ? new Date() : null;
+        }
+
+        @Override
+        public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) throws KeyStoreException {
+            throw new KeyStoreException("Keys are created through KeyPairGenerator");
+        }
+
+        @Override
+        public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) throws KeyStoreException {
+            throw new KeyStoreException("Keys are created through KeyPairGenerator");
+        }
+
+        @Override
+        public void engineSetCertificateEntry(String alias, Certificate cert) throws KeyStoreException {
+            throw new KeyStoreException("Certificates are created through KeyPairGenerator");
+        }
+
+        @Override
+        public void engineDeleteEntry(String alias) {
+            keyPairs.remove(alias);
+        }
+
+        @Override
+        public Enumeration<String> engineAliases() {
+            return Collections.enumeration(keyPairs.keySet());
+        }
+
+        @Override
+        public boolean engineContainsAlias(String alias) {
+            return keyPairs.containsKey(alias);
+        }
+
+        @Override
+        public int engineSize() {
+            return keyPairs.size();
+        }
+
+        @Override
+        public boolean engineIsKeyEntry(String alias) {
+            return keyPairs.containsKey(alias);
+        }
+
+        @Override
+        public boolean engineIsCertificateEntry(String alias) {
+            return false;
+        }
+
+        @Override
+        public String engineGetCertificateAlias(Certificate cert) {
+            for (Map.Entry<String, KeyPair> entry : keyPairs.entrySet()) {
+                if (entry.getValue().getPublic().equals(cert.getPublicKey())) {
+                    return entry.getKey();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void engineStore(OutputStream stream, char[] password) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void engineLoad(InputStream stream, char[] password) {
+        }
+    }
+
+    private static final class RsaKeyPairGeneratorSpi extends KeyPairGeneratorSpi {
+        private String alias;
+
+        @Override
+        public void initialize(int keysize, SecureRandom random) {
+            throw new UnsupportedOperationException("An alias is required");
+        }
+
+        @Override
+        public void initialize(AlgorithmParameterSpec params, SecureRandom random) throws InvalidAlgorithmParameterException {
+            if (params instanceof KeyGenParameterSpec) {
+                alias = ((KeyGenParameterSpec) params).getKeystoreAlias();
+            } else if (params instanceof KeyPairGeneratorSpec) {
+                alias = ((KeyPairGeneratorSpec) params).getKeystoreAlias();
+            } else {
+                throw new InvalidAlgorithmParameterException("Unsupported parameters: " + params);
+            }
+        }
+
+        @Override
+        public KeyPair generateKeyPair() {
+            try {
+                final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(RSA_KEY_SIZE);
+                final KeyPair keyPair = generator.generateKeyPair();
+                keyPairs.put(alias, keyPair);
+                return keyPair;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class PublicKeyCertificate extends Certificate {
+        private final PublicKey publicKey;
+
+        PublicKeyCertificate(PublicKey publicKey) {
+            super("X.509");
+            this.publicKey = publicKey;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return publicKey.getEncoded();
+        }
+
+        @Override
+        public void verify(PublicKey key) {
+        }
+
+        @Override
+        public void verify(PublicKey key, String sigProvider) {
+        }
+
+        @Override
+        public String toString() {
+            return "PublicKeyCertificate[" + publicKey.getAlgorithm() + "]";
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+    }
+
+    private static final class DelegatingCipherSpi extends CipherSpi {
+        private final Cipher delegate;
+        private final boolean usesKeyStoreKeys;
+
+        DelegatingCipherSpi(String transformation, boolean usesKeyStoreKeys) throws NoSuchPaddingException, NoSuchAlgorithmException {
+            delegate = Cipher.getInstance(transformation);
+            this.usesKeyStoreKeys = usesKeyStoreKeys;
+        }
+
+        private void checkUnlocked() {
+            if (usesKeyStoreKeys && locked) {
+                throw new ProviderException("Key store is locked");
+            }
+        }
+
+        @Override
+        protected void engineSetMode(String mode) throws NoSuchAlgorithmException {
+            throw new NoSuchAlgorithmException("Mode is fixed by the transformation");
+        }
+
+        @Override
+        protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+            throw new NoSuchPaddingException("Padding is fixed by the transformation");
+        }
+
+        @Override
+        protected int engineGetBlockSize() {
+            return delegate.getBlockSize();
+        }
+
+        @Override
+        protected int engineGetOutputSize(int inputLen) {
+            return delegate.getOutputSize(inputLen);
+        }
+
+        @Override
+        protected byte[] engineGetIV() {
+            return delegate.getIV();
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate.getParameters();
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+            checkUnlocked();
+            delegate.init(opmode, key, random);
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+            checkUnlocked();
+            delegate.init(opmode, key, params, random);
+        }
+
+        @Override
+        protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+            checkUnlocked();
+            delegate.init(opmode, key, params, random);
+        }
+
+        @Override
+        protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+            return delegate.update(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
+            return delegate.update(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        @Override
+        protected void engineUpdateAAD(byte[] src, int offset, int len) {
+            delegate.updateAAD(src, offset, len);
+        }
+
+        @Override
+        protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen) throws IllegalBlockSizeException, BadPaddingException {
+            return delegate.doFinal(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+            return delegate.doFinal(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        @Override
+        protected byte[] engineWrap(Key key) throws IllegalBlockSizeException, InvalidKeyException {
+            return delegate.wrap(key);
+        }
+
+        @Override
+        protected Key engineUnwrap(byte[] wrappedKey, String wrappedKeyAlgorithm, int wrappedKeyType) throws InvalidKeyException, NoSuchAlgorithmException {
+            return delegate.unwrap(wrappedKey, wrappedKeyAlgorithm, wrappedKeyType);
+        }
+
+        @Override
+        protected int engineGetKeySize(Key key) {
+            return key.getEncoded() != null ? key.getEncoded().length * 8 : 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.util.Base64;
+
+import com.it_nomads.fluttersecurestorage.ciphers.StorageCipher;
+import com.it_nomads.fluttersecurestorage.ciphers.StorageCipherFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage ciphers on their own: encrypt, decrypt, and the full encode path of a stored value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CipherBenchmark {
+
+    @Param({"AES_CBC_PKCS7Padding", "AES_GCM_NoPadding"})
+    public String storageCipherAlgorithm;
+
+    @Param({"16", "256", "4096", "65536"})
+    public int payloadSize;
+
+    private StorageCipher cipher;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+
+    @Setup
+    public void setUp() throws Exception {
+        final BenchmarkContext context = BenchmarkContext.create();
+        final Map<String, Object> options = new HashMap<>();
+        options.put("storageCipherAlgorithm", storageCipherAlgorithm);
+        final StorageCipherFactory factory = new StorageCipherFactory(context.getSharedPreferences("FlutterSecureStorage", 0), options);
+        cipher = factory.getStorageCipher(context, factory.getCurrentStorageAlgorithmCode());
+
+        plaintext = new byte[payloadSize];
+        new Random(42).nextBytes(plaintext);
+        ciphertext = cipher.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return cipher.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return cipher.decrypt(ciphertext);
+    }
+
+    /**
+     * Encrypt and Base64 encode, then decode and decrypt, as a value does from write to read.
+     */
+    @Benchmark
+    public byte[] base64RoundTrip() throws Exception {
+        final String stored = Base64.encodeToString(cipher.encrypt(plaintext), Base64.DEFAULT);
+        return cipher.decrypt(Base64.decode(stored, Base64.DEFAULT));
+    }
+}
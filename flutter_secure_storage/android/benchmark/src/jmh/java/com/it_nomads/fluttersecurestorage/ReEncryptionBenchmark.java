@@ -0,0 +1,61 @@
+package com.it_nomads.fluttersecurestorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-encrypting a whole store after the storage algorithm changed from CBC to GCM. Every invocation
+ * starts from a store written with CBC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReEncryptionBenchmark {
+
+    @Param({"100", "1000"})
+    public int entryCount;
+
+    @Param({"32", "1024"})
+    public int valueSize;
+
+    private FlutterSecureStorage storage;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        final BenchmarkContext context = BenchmarkContext.create();
+        final InMemoryStorageBackend backend = new InMemoryStorageBackend();
+        final FlutterSecureStorage legacy = StorageBenchmark.createStorage(context, backend, "AES_CBC_PKCS7Padding");
+        final String value = StorageBenchmark.createValue(valueSize);
+        for (int i = 0; i < entryCount; i++) {
+            legacy.write(legacy.ELEMENT_PREFERENCES_KEY_PREFIX + "_key" + i, value);
+        }
+
+        storage = StorageBenchmark.createStorage(context, backend, "AES_GCM_NoPadding");
+        if (!storage.isReEncryptionPending()) {
+            throw new IllegalStateException("Nothing to re-encrypt");
+        }
+    }
+
+    @Benchmark
+    public boolean reEncryptAll() {
+        while (storage.reEncryptBatch()) {
+            // Each batch is committed on its own, as in the app.
+        }
+        return storage.isReEncryptionPending();
+    }
+}
@@ -0,0 +1,83 @@
+package com.it_nomads.fluttersecurestorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * readAll and write of a store holding {@link #entryCount} values, with the value cache off so every
+ * read decrypts. Values are kept in an {@link InMemoryStorageBackend}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"AES_CBC_PKCS7Padding", "AES_GCM_NoPadding"})
+    public String storageCipherAlgorithm;
+
+    @Param({"10", "100", "1000"})
+    public int entryCount;
+
+    @Param({"32", "1024"})
+    public int valueSize;
+
+    private FlutterSecureStorage storage;
+    private String[] keys;
+    private String value;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        storage = createStorage(BenchmarkContext.create(), new InMemoryStorageBackend(), storageCipherAlgorithm);
+        value = createValue(valueSize);
+        keys = new String[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            keys[i] = storage.ELEMENT_PREFERENCES_KEY_PREFIX + "_key" + i;
+            storage.write(keys[i], value);
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> readAll() throws Exception {
+        return storage.readAll();
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        storage.write(keys[next], value);
+        next = (next + 1) % keys.length;
+    }
+
+    /**
+     * @param context still provides the preferences of the AES key, values go to {@code backend}.
+     */
+    static FlutterSecureStorage createStorage(BenchmarkContext context, StorageBackend backend, String storageCipherAlgorithm) {
+        final Map<String, Object> options = new HashMap<>();
+        options.put("storageCipherAlgorithm", storageCipherAlgorithm);
+        return new FlutterSecureStorage(context, StorageOptions.fromMap(options), new StorageMetrics(), null, backend);
+    }
+
+    static String createValue(int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package android.content;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * The part of android.content.Context used by the plugin.
+ */
+public abstract class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    public abstract Context getApplicationContext();
+
+    public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+    public abstract String getPackageName();
+
+    public abstract Resources getResources();
+
+    public abstract Context createConfigurationContext(Configuration overrideConfiguration);
+
+    public abstract File getFilesDir();
+
+    public abstract File getNoBackupFilesDir();
+}
@@ -0,0 +1,11 @@
+package android.content.res;
+
+import java.util.Locale;
+
+public class Configuration {
+    public Locale locale;
+
+    public void setLocale(Locale loc) {
+        locale = loc;
+    }
+}
@@ -0,0 +1,53 @@
+package android.security;
+
+import android.content.Context;
+
+import java.math.BigInteger;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+public final class KeyPairGeneratorSpec implements AlgorithmParameterSpec {
+    private final String keystoreAlias;
+
+    private KeyPairGeneratorSpec(String keystoreAlias) {
+        this.keystoreAlias = keystoreAlias;
+    }
+
+    public String getKeystoreAlias() {
+        return keystoreAlias;
+    }
+
+    public static final class Builder {
+        private String keystoreAlias;
+
+        public Builder(Context context) {
+        }
+
+        public Builder setAlias(String alias) {
+            keystoreAlias = alias;
+            return this;
+        }
+
+        public Builder setSubject(X500Principal subject) {
+            return this;
+        }
+
+        public Builder setSerialNumber(BigInteger serialNumber) {
+            return this;
+        }
+
+        public Builder setStartDate(Date startDate) {
+            return this;
+        }
+
+        public Builder setEndDate(Date endDate) {
+            return this;
+        }
+
+        public KeyPairGeneratorSpec build() {
+            return new KeyPairGeneratorSpec(keystoreAlias);
+        }
+    }
+}
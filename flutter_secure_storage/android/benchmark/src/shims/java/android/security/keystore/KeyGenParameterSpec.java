@@ -0,0 +1,71 @@
+package android.security.keystore;
+
+import java.math.BigInteger;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+public final class KeyGenParameterSpec implements AlgorithmParameterSpec {
+    private final String keystoreAlias;
+    private final int keySize;
+
+    private KeyGenParameterSpec(String keystoreAlias, int keySize) {
+        this.keystoreAlias = keystoreAlias;
+        this.keySize = keySize;
+    }
+
+    public String getKeystoreAlias() {
+        return keystoreAlias;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+
+    public static final class Builder {
+        private final String keystoreAlias;
+        private int keySize = -1;
+
+        public Builder(String keystoreAlias, int purposes) {
+            this.keystoreAlias = keystoreAlias;
+        }
+
+        public Builder setKeySize(int keySize) {
+            this.keySize = keySize;
+            return this;
+        }
+
+        public Builder setCertificateSubject(X500Principal subject) {
+            return this;
+        }
+
+        public Builder setCertificateSerialNumber(BigInteger serialNumber) {
+            return this;
+        }
+
+        public Builder setCertificateNotBefore(Date date) {
+            return this;
+        }
+
+        public Builder setCertificateNotAfter(Date date) {
+            return this;
+        }
+
+        public Builder setDigests(String... digests) {
+            return this;
+        }
+
+        public Builder setBlockModes(String... blockModes) {
+            return this;
+        }
+
+        public Builder setEncryptionPaddings(String... paddings) {
+            return this;
+        }
+
+        public KeyGenParameterSpec build() {
+            return new KeyGenParameterSpec(keystoreAlias, keySize);
+        }
+    }
+}
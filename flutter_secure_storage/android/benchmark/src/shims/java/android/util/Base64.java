@@ -0,0 +1,45 @@
+package android.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base64 with the flag semantics of android.util.Base64: {@link #DEFAULT} wraps lines at 76
+ * characters and ends with a newline, decoding skips line breaks.
+ */
+public final class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+    public static final int URL_SAFE = 8;
+
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    private Base64() {
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        java.util.Base64.Encoder encoder;
+        if ((flags & URL_SAFE) != 0) {
+            encoder = java.util.Base64.getUrlEncoder();
+        } else if ((flags & NO_WRAP) != 0) {
+            encoder = java.util.Base64.getEncoder();
+        } else {
+            encoder = java.util.Base64.getMimeEncoder(76, LINE_SEPARATOR);
+        }
+        if ((flags & NO_PADDING) != 0) {
+            encoder = encoder.withoutPadding();
+        }
+        final String encoded = encoder.encodeToString(input);
+        if ((flags & (NO_WRAP | URL_SAFE)) == 0 && !encoded.isEmpty()) {
+            return encoded + "\n";
+        }
+        return encoded;
+    }
+
+    public static byte[] decode(String str, int flags) {
+        if ((flags & URL_SAFE) != 0) {
+            str = str.replace('-', '+').replace('_', '/');
+        }
+        return java.util.Base64.getMimeDecoder().decode(str.getBytes(StandardCharsets.US_ASCII));
+    }
+}
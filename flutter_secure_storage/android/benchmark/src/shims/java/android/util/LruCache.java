@@ -0,0 +1,89 @@
+package android.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Synchronized LRU cache with the API of android.util.LruCache that the plugin uses.
+ */
+public class LruCache<K, V> {
+    private final LinkedHashMap<K, V> map;
+    private final int maxSize;
+    private int size;
+    private int hitCount;
+    private int missCount;
+
+    public LruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<>(0, 0.75f, true);
+    }
+
+    public final synchronized V get(K key) {
+        final V value = map.get(key);
+        if (value != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return value;
+    }
+
+    public final synchronized V put(K key, V value) {
+        size += sizeOf(key, value);
+        final V previous = map.put(key, value);
+        if (previous != null) {
+            size -= sizeOf(key, previous);
+        }
+        trimToSize(maxSize);
+        return previous;
+    }
+
+    public final synchronized V remove(K key) {
+        final V previous = map.remove(key);
+        if (previous != null) {
+            size -= sizeOf(key, previous);
+        }
+        return previous;
+    }
+
+    public final void evictAll() {
+        trimToSize(-1);
+    }
+
+    public final synchronized int size() {
+        return size;
+    }
+
+    public final synchronized int maxSize() {
+        return maxSize;
+    }
+
+    public final synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public final synchronized int missCount() {
+        return missCount;
+    }
+
+    public final synchronized Map<K, V> snapshot() {
+        return new LinkedHashMap<>(map);
+    }
+
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    private synchronized void trimToSize(int maxSize) {
+        final Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            final Map.Entry<K, V> eldest = iterator.next();
+            size -= sizeOf(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+}
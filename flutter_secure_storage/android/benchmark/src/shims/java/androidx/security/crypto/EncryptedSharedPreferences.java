@@ -0,0 +1,28 @@
+package androidx.security.crypto;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * EncryptedSharedPreferences are not available on the JVM, creating them always fails.
+ */
+public final class EncryptedSharedPreferences {
+    public enum PrefKeyEncryptionScheme {
+        AES256_SIV
+    }
+
+    public enum PrefValueEncryptionScheme {
+        AES256_GCM
+    }
+
+    private EncryptedSharedPreferences() {
+    }
+
+    public static SharedPreferences create(Context context, String fileName, MasterKey masterKey,
+                                           PrefKeyEncryptionScheme prefKeyEncryptionScheme,
+                                           PrefValueEncryptionScheme prefValueEncryptionScheme) throws GeneralSecurityException {
+        throw new GeneralSecurityException("EncryptedSharedPreferences are not available in benchmarks");
+    }
+}
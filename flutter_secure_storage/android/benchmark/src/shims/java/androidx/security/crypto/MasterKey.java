@@ -0,0 +1,29 @@
+package androidx.security.crypto;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * EncryptedSharedPreferences are not available on the JVM, building a key always fails.
+ */
+public final class MasterKey {
+    public static final String DEFAULT_MASTER_KEY_ALIAS = "_androidx_security_master_key_";
+
+    private MasterKey() {
+    }
+
+    public static final class Builder {
+        public Builder(Context context) {
+        }
+
+        public Builder setKeyGenParameterSpec(KeyGenParameterSpec keyGenParameterSpec) {
+            return this;
+        }
+
+        public MasterKey build() throws GeneralSecurityException {
+            throw new GeneralSecurityException("MasterKey is not available in benchmarks");
+        }
+    }
+}
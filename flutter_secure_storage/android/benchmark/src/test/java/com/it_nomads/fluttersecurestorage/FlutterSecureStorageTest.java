@@ -0,0 +1,295 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round trips through {@link FlutterSecureStorage} with the values kept in an
+ * {@link InMemoryStorageBackend}, which records every commit.
+ */
+public class FlutterSecureStorageTest {
+
+    private static final String CBC = "AES_CBC_PKCS7Padding";
+    private static final String GCM = "AES_GCM_NoPadding";
+
+    private BenchmarkContext context;
+    private RecordingBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        context = BenchmarkContext.create();
+        backend = new RecordingBackend();
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws Exception {
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+
+        storage.write(key(storage, "a"), "1");
+        storage.writeBytes(key(storage, "b"), new byte[]{1, 2, 3});
+
+        assertEquals("1", storage.read(key(storage, "a")));
+        assertArrayEquals(new byte[]{1, 2, 3}, storage.readBytes(key(storage, "b")));
+        assertTrue(storage.containsKey(key(storage, "a")));
+
+        storage.delete(key(storage, "a"));
+        assertNull(storage.read(key(storage, "a")));
+        assertFalse(storage.containsKey(key(storage, "a")));
+    }
+
+    @Test
+    public void retriesStorageCipherAfterFailure() throws Exception {
+        createStorage(options(GCM)).write("a", "1");
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+        BenchmarkKeyStoreProvider.setLocked(true);
+        try {
+            storage.prewarm();
+        } finally {
+            BenchmarkKeyStoreProvider.setLocked(false);
+        }
+
+        assertFalse(storage.isInitialized());
+        assertEquals("1", storage.read("a"));
+        assertTrue(storage.isInitialized());
+        storage.write("b", "2");
+        assertEquals("2", createStorage(options(GCM)).read("b"));
+    }
+
+    @Test
+    public void valuesSurviveANewInstance() throws Exception {
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+        storage.write(key(storage, "a"), "1");
+        storage.write(key(storage, "b"), "2");
+
+        final FlutterSecureStorage reopened = createStorage(options(GCM));
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("a", "1");
+        expected.put("b", "2");
+        assertEquals(expected, reopened.readAll());
+    }
+
+    @Test
+    public void bufferedWritesAreReadBeforeTheyAreStored() throws Exception {
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+        final int commits = backend.commits.size();
+
+        storage.write(key(storage, "a"), "1", FlutterSecureStorage.Durability.BUFFERED);
+        storage.delete(key(storage, "b"), FlutterSecureStorage.Durability.BUFFERED);
+
+        assertEquals(commits, backend.commits.size());
+        assertFalse(backend.contains(key(storage, "a")));
+        assertEquals("1", storage.read(key(storage, "a")));
+        assertEquals("1", storage.readAll().get("a"));
+        assertTrue(storage.hasPendingWrites());
+
+        storage.flush(FlutterSecureStorage.Durability.APPLY);
+
+        assertFalse(storage.hasPendingWrites());
+        assertEquals(commits + 1, backend.commits.size());
+        assertEquals("1", createStorage(options(GCM)).read(key(storage, "a")));
+    }
+
+    @Test
+    public void commitIsDurable() throws Exception {
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+
+        storage.write(key(storage, "a"), "1", FlutterSecureStorage.Durability.COMMIT);
+
+        assertTrue(backend.lastCommitDurable());
+    }
+
+    @Test
+    public void unchangedWriteIsSkipped() throws Exception {
+        final Map<String, Object> options = options(GCM);
+        options.put("cacheSize", "8");
+        final FlutterSecureStorage storage = createStorage(options);
+        storage.write(key(storage, "a"), "1");
+        final int commits = backend.commits.size();
+
+        storage.write(key(storage, "a"), "1");
+        storage.delete(key(storage, "missing"));
+
+        assertEquals(commits, backend.commits.size());
+
+        storage.write(key(storage, "a"), "2");
+
+        assertEquals(commits + 1, backend.commits.size());
+        assertEquals("2", storage.read(key(storage, "a")));
+    }
+
+    @Test
+    public void replacedValueFilesAreDeleted() throws Exception {
+        final Map<String, Object> options = options(GCM);
+        options.put("largeValueThreshold", "16");
+        final FlutterSecureStorage storage = createStorage(options);
+        final String large = StorageBenchmark.createValue(1024);
+
+        storage.write(key(storage, "a"), large);
+
+        assertEquals(1, countValueFiles());
+        assertTrue(backend.lastCommitDurable());
+        assertEquals(large, storage.read(key(storage, "a")));
+
+        storage.write(key(storage, "a"), StorageBenchmark.createValue(2048));
+
+        assertEquals(1, countValueFiles());
+
+        storage.write(key(storage, "a"), "small");
+
+        assertEquals(0, countValueFiles());
+        assertEquals("small", storage.read(key(storage, "a")));
+    }
+
+    @Test
+    public void reEncryptsValuesOfAnOlderAlgorithm() throws Exception {
+        final FlutterSecureStorage legacy = createStorage(options(CBC));
+        for (int i = 0; i < FlutterSecureStorage.RE_ENCRYPTION_BATCH_SIZE + 1; i++) {
+            legacy.write(key(legacy, "key" + i), "value" + i);
+        }
+
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+
+        assertTrue(storage.isReEncryptionPending());
+        // Values are readable before and while they are re-encrypted.
+        assertEquals("value0", storage.read(key(storage, "key0")));
+        storage.write(key(storage, "new"), "value");
+        assertTrue(storage.reEncryptBatch());
+        assertEquals(FlutterSecureStorage.RE_ENCRYPTION_BATCH_SIZE + 2, storage.readAll().size());
+
+        while (storage.reEncryptBatch()) {
+            // One batch per call.
+        }
+
+        assertFalse(storage.isReEncryptionPending());
+        final FlutterSecureStorage reopened = createStorage(options(GCM));
+        assertFalse(reopened.isReEncryptionPending());
+        final Map<String, String> all = reopened.readAll();
+        assertEquals(FlutterSecureStorage.RE_ENCRYPTION_BATCH_SIZE + 2, all.size());
+        assertEquals("value1", all.get("key1"));
+        assertEquals("value", all.get("new"));
+    }
+
+    @Test
+    public void deleteAllRemovesValuesAndFiles() throws Exception {
+        final Map<String, Object> options = options(GCM);
+        options.put("largeValueThreshold", "16");
+        final FlutterSecureStorage storage = createStorage(options);
+        storage.write(key(storage, "a"), "1");
+        storage.write(key(storage, "b"), StorageBenchmark.createValue(1024));
+        storage.write(key(storage, "c"), "3", FlutterSecureStorage.Durability.BUFFERED);
+
+        storage.deleteAll();
+
+        assertTrue(backend.lastCommitDurable());
+        assertTrue(storage.readAll().isEmpty());
+        assertFalse(storage.hasPendingWrites());
+        assertEquals(0, countValueFiles());
+        assertTrue(createStorage(options).readAll().isEmpty());
+
+        storage.write(key(storage, "a"), "2");
+        assertEquals("2", createStorage(options).read(key(storage, "a")));
+    }
+
+    @Test
+    public void deleteAllWithoutValueFilesIsApplied() throws Exception {
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+        storage.write(key(storage, "a"), "1");
+
+        storage.deleteAll();
+
+        assertFalse(backend.lastCommitDurable());
+        assertTrue(createStorage(options(GCM)).readAll().isEmpty());
+    }
+
+    @Test
+    public void deleteAllWithPrefixKeepsOtherKeys() throws Exception {
+        final FlutterSecureStorage storage = createStorage(options(GCM));
+        storage.write(key(storage, "user.a"), "1");
+        storage.write(key(storage, "user.b"), "2");
+        storage.write(key(storage, "app.a"), "3");
+
+        storage.deleteAll("user.");
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("app.a", "3");
+        assertEquals(expected, storage.readAll());
+    }
+
+    private FlutterSecureStorage createStorage(Map<String, Object> options) {
+        return new FlutterSecureStorage(context, StorageOptions.fromMap(options), new StorageMetrics(), null, backend);
+    }
+
+    private static Map<String, Object> options(String storageCipherAlgorithm) {
+        final Map<String, Object> options = new HashMap<>();
+        options.put("storageCipherAlgorithm", storageCipherAlgorithm);
+        return options;
+    }
+
+    private static String key(FlutterSecureStorage storage, String key) {
+        return storage.ELEMENT_PREFERENCES_KEY_PREFIX + "_" + key;
+    }
+
+    private int countValueFiles() {
+        final File directory = new File(LargeValueStore.getRootDirectory(context), StorageOptions.DEFAULT_SHARED_PREFERENCES_NAME);
+        final String[] names = directory.list();
+        return names != null ? names.length : 0;
+    }
+
+    /**
+     * Records whether each commit was durable.
+     */
+    private static class RecordingBackend extends InMemoryStorageBackend {
+        final List<Boolean> commits = new ArrayList<>();
+
+        @Override
+        public Batch edit() {
+            final Batch batch = super.edit();
+            return new Batch() {
+                @Override
+                public Batch put(String key, String value) {
+                    batch.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Batch remove(String key) {
+                    batch.remove(key);
+                    return this;
+                }
+
+                @Override
+                public Batch clear() {
+                    batch.clear();
+                    return this;
+                }
+
+                @Override
+                public boolean commit(boolean durable) {
+                    synchronized (commits) {
+                        commits.add(durable);
+                    }
+                    return batch.commit(durable);
+                }
+            };
+        }
+
+        boolean lastCommitDurable() {
+            synchronized (commits) {
+                return commits.get(commits.size() - 1);
+            }
+        }
+    }
+}
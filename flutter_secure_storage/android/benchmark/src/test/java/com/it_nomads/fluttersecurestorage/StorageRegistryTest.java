@@ -0,0 +1,81 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class StorageRegistryTest {
+
+    private BenchmarkContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = BenchmarkContext.create();
+    }
+
+    @Test
+    public void sharesStoreAcrossKeyPrefixes() {
+        final StorageRegistry registry = createRegistry();
+        final Map<String, Object> other = options("AES_GCM_NoPadding");
+        other.put("preferencesKeyPrefix", "other");
+
+        assertSame(registry.get(StorageOptions.fromMap(options("AES_GCM_NoPadding"))), registry.get(StorageOptions.fromMap(other)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsConflictingOptionsOfCalls() {
+        final StorageRegistry registry = createRegistry();
+        registry.get(StorageOptions.fromMap(options("AES_GCM_NoPadding")));
+
+        registry.get(StorageOptions.fromMap(options("AES_CBC_PKCS7Padding")));
+    }
+
+    @Test
+    public void optionsChangedAfterPrewarmStillReadAndWrite() throws Exception {
+        final StorageOptions previous = StorageOptions.fromMap(options("AES_CBC_PKCS7Padding"));
+        final FlutterSecureStorage written = createRegistry().get(previous);
+        written.write(written.ELEMENT_PREFERENCES_KEY_PREFIX + "_a", "1");
+
+        // The next start prewarms the recorded options, then the app calls with new ones.
+        final StorageRegistry registry = createRegistry();
+        final FlutterSecureStorage prewarmed = registry.getForPrewarm(previous);
+        prewarmed.prewarm();
+        final StorageOptions current = StorageOptions.fromMap(options("AES_GCM_NoPadding"));
+        final FlutterSecureStorage storage = registry.get(current);
+
+        assertNotSame(prewarmed, storage);
+        assertSame(current, storage.options);
+        assertEquals("1", storage.read(storage.ELEMENT_PREFERENCES_KEY_PREFIX + "_a"));
+        storage.write(storage.ELEMENT_PREFERENCES_KEY_PREFIX + "_b", "2");
+        assertEquals("2", registry.get(current).read(storage.ELEMENT_PREFERENCES_KEY_PREFIX + "_b"));
+        // Once claimed by a call, the store is no longer replaced.
+        assertNull(registry.getForPrewarm(previous));
+    }
+
+    @Test
+    public void prewarmedStoreIsUsedByMatchingCalls() {
+        final StorageRegistry registry = createRegistry();
+        final StorageOptions options = StorageOptions.fromMap(options("AES_GCM_NoPadding"));
+
+        final FlutterSecureStorage prewarmed = registry.getForPrewarm(options);
+
+        assertSame(prewarmed, registry.get(options));
+    }
+
+    private StorageRegistry createRegistry() {
+        return new StorageRegistry(context, new StorageMetrics(), null);
+    }
+
+    private static Map<String, Object> options(String storageCipherAlgorithm) {
+        final Map<String, Object> options = new HashMap<>();
+        options.put("storageCipherAlgorithm", storageCipherAlgorithm);
+        return options;
+    }
+}
@@ -0,0 +1,129 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.util.Arrays;
+
+/**
+ * Base64 over caller-provided arrays, so values can be encoded and decoded without intermediate
+ * copies. Encodes without line breaks; decodes input with or without them, as produced by
+ * android.util.Base64 with the default flags.
+ */
+final class Base64Codec {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final char PAD = '=';
+    private static final int INVALID = -1;
+    private static final int SKIP = -2;
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, INVALID);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = i;
+        }
+        DECODE['\n'] = SKIP;
+        DECODE['\r'] = SKIP;
+        DECODE[' '] = SKIP;
+        DECODE['\t'] = SKIP;
+    }
+
+    private Base64Codec() {
+    }
+
+    static int getEncodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * @return an upper bound of the bytes {@code length} Base64 characters decode to.
+     */
+    static int getMaxDecodedLength(int length) {
+        return (length + 3) / 4 * 3;
+    }
+
+    /**
+     * @return the number of characters written to {@code output}.
+     */
+    static int encode(byte[] input, int offset, int length, char[] output) {
+        int out = 0;
+        final int end = offset + length;
+        int in = offset;
+        while (end - in >= 3) {
+            final int bits = (input[in++] & 0xff) << 16 | (input[in++] & 0xff) << 8 | (input[in++] & 0xff);
+            output[out++] = ALPHABET[bits >>> 18];
+            output[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[out++] = ALPHABET[(bits >>> 6) & 0x3f];
+            output[out++] = ALPHABET[bits & 0x3f];
+        }
+        if (end - in == 1) {
+            final int bits = (input[in] & 0xff) << 16;
+            output[out++] = ALPHABET[bits >>> 18];
+            output[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[out++] = PAD;
+            output[out++] = PAD;
+        } else if (end - in == 2) {
+            final int bits = (input[in] & 0xff) << 16 | (input[in + 1] & 0xff) << 8;
+            output[out++] = ALPHABET[bits >>> 18];
+            output[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[out++] = ALPHABET[(bits >>> 6) & 0x3f];
+            output[out++] = PAD;
+        }
+        return out;
+    }
+
+    /**
+     * Decodes {@code length} characters of {@code input} into {@code output}, which must hold
+     * {@link #getMaxDecodedLength}{@code (length)} bytes.
+     *
+     * @return the number of bytes written, or -1 if the input is not valid Base64.
+     */
+    static int decode(char[] input, int length, byte[] output) {
+        int out = 0;
+        int bits = 0;
+        int bitCount = 0;
+        boolean padding = false;
+        int i = 0;
+        while (i < length) {
+            // Whole groups of four characters, the common case.
+            if (bitCount == 0 && !padding && i + 4 <= length) {
+                final int a = getValue(input[i]);
+                final int b = getValue(input[i + 1]);
+                final int c = getValue(input[i + 2]);
+                final int d = getValue(input[i + 3]);
+                if ((a | b | c | d) >= 0) {
+                    final int group = a << 18 | b << 12 | c << 6 | d;
+                    output[out++] = (byte) (group >>> 16);
+                    output[out++] = (byte) (group >>> 8);
+                    output[out++] = (byte) group;
+                    i += 4;
+                    continue;
+                }
+            }
+
+            final char c = input[i++];
+            final int value = getValue(c);
+            if (value == SKIP) {
+                continue;
+            }
+            if (c == PAD) {
+                padding = true;
+                continue;
+            }
+            if (value < 0 || padding) {
+                return -1;
+            }
+            bits = bits << 6 | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                output[out++] = (byte) (bits >>> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        // A single character left over cannot encode a byte.
+        return bitCount == 6 ? -1 : out;
+    }
+
+    private static int getValue(char c) {
+        return c < DECODE.length ? DECODE[c] : INVALID;
+    }
+}
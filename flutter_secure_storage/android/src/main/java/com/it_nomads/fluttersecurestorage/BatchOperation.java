@@ -0,0 +1,52 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.util.Arrays;
+
+/**
+ * A single write or delete inside a batch. Keys are already prefixed. A write holds either a
+ * string value or bytes.
+ */
+final class BatchOperation {
+
+    enum Type {
+        WRITE,
+        DELETE
+    }
+
+    final Type type;
+    final String key;
+    final String value;
+    final byte[] bytes;
+
+    private BatchOperation(Type type, String key, String value, byte[] bytes) {
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.bytes = bytes;
+    }
+
+    static BatchOperation write(String key, String value) {
+        return new BatchOperation(Type.WRITE, key, value, null);
+    }
+
+    static BatchOperation writeBytes(String key, byte[] bytes) {
+        return new BatchOperation(Type.WRITE, key, null, bytes);
+    }
+
+    static BatchOperation delete(String key) {
+        return new BatchOperation(Type.DELETE, key, null, null);
+    }
+
+    /**
+     * @return whether both operations leave their key in the same state.
+     */
+    boolean hasSameValue(BatchOperation other) {
+        if (type != other.type) {
+            return false;
+        }
+        if (type == Type.DELETE) {
+            return true;
+        }
+        return value != null ? value.equals(other.value) : Arrays.equals(bytes, other.bytes);
+    }
+}
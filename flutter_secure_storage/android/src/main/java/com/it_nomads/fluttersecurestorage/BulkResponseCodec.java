@@ -0,0 +1,150 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of the results of bulk methods, sent as a single direct buffer instead of one
+ * object per entry. Numbers are big-endian. A response starts with a status byte:
+ * <ul>
+ *     <li>{@link #SUCCESS}, followed by a type byte and the result. {@link #TYPE_MAP} is the entry
+ *     count followed by each key and value as strings. {@link #TYPE_BOOLEAN_LIST} is the element
+ *     count followed by one byte per element, 1 for true. {@link #TYPE_STRING} is a single string,
+ *     sent when a store was reset after an error.</li>
+ *     <li>{@link #ERROR}, followed by the error code and message as strings.</li>
+ * </ul>
+ * A string is its UTF-8 length as an int, -1 for null, followed by the UTF-8 bytes. The Dart
+ * BulkResponseCodec of the platform interface decodes this layout.
+ */
+final class BulkResponseCodec {
+
+    static final byte SUCCESS = 0;
+    static final byte ERROR = 1;
+    static final byte TYPE_MAP = 1;
+    static final byte TYPE_BOOLEAN_LIST = 2;
+    static final byte TYPE_STRING = 3;
+
+    private BulkResponseCodec() {
+    }
+
+    /**
+     * @return whether the results of {@code method} can be encoded.
+     */
+    static boolean supports(String method) {
+        return "readAll".equals(method) || "batch".equals(method);
+    }
+
+    @SuppressWarnings("unchecked")
+    static ByteBuffer encodeSuccess(Object result) {
+        if (result instanceof Map) {
+            return encodeMap((Map<String, String>) result);
+        }
+        if (result instanceof List) {
+            return encodeBooleanList((List<Boolean>) result);
+        }
+        if (result instanceof String) {
+            final String value = (String) result;
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(2 + getEncodedLength(value));
+            buffer.put(SUCCESS).put(TYPE_STRING);
+            putString(buffer, value);
+            buffer.flip();
+            return buffer;
+        }
+        throw new IllegalArgumentException("Unsupported bulk result " + (result != null ? result.getClass().getName() : null));
+    }
+
+    static ByteBuffer encodeError(String code, String message) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1 + getEncodedLength(code) + getEncodedLength(message));
+        buffer.put(ERROR);
+        putString(buffer, code);
+        putString(buffer, message);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer encodeMap(Map<String, String> map) {
+        // Sized exactly up front, so the entries are written straight into the one buffer.
+        int size = 2 + 4;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            size += getEncodedLength(entry.getKey()) + getEncodedLength(entry.getValue());
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.put(SUCCESS).put(TYPE_MAP).putInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            putString(buffer, entry.getKey());
+            putString(buffer, entry.getValue());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer encodeBooleanList(List<Boolean> list) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(2 + 4 + list.size());
+        buffer.put(SUCCESS).put(TYPE_BOOLEAN_LIST).putInt(list.size());
+        for (Boolean value : list) {
+            buffer.put((byte) (Boolean.TRUE.equals(value) ? 1 : 0));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int getEncodedLength(String value) {
+        return 4 + (value != null ? getUtf8Length(value) : 0);
+    }
+
+    private static int getUtf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates become '?', as in String.getBytes.
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes {@code value} as UTF-8 without an intermediate byte array.
+     */
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        final int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xf0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3f));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                buffer.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+    }
+}
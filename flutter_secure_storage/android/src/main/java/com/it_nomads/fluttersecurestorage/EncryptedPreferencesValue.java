@@ -0,0 +1,64 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Values as stored in EncryptedSharedPreferences, which only holds strings. Bytes are kept Base64
+ * encoded behind a marker, so they are told apart from strings that happen to be valid Base64.
+ * <p>
+ * Format: strings are stored as they are. Bytes are {@code MARKER + "b" + Base64}. A string that
+ * starts with the marker itself is escaped as {@code MARKER + "s" + string}. The marker is a
+ * private use character, so values written before bytes were supported read as before.
+ */
+final class EncryptedPreferencesValue {
+
+    private static final char MARKER = '\uE000';
+    private static final char TYPE_BYTES = 'b';
+    private static final char TYPE_STRING = 's';
+
+    private EncryptedPreferencesValue() {
+    }
+
+    static String encodeString(String value) {
+        return value.isEmpty() || value.charAt(0) != MARKER ? value : MARKER + (TYPE_STRING + value);
+    }
+
+    static String encodeBytes(String base64) {
+        return MARKER + (TYPE_BYTES + base64);
+    }
+
+    /**
+     * @return the stored value as a string; bytes are returned Base64 encoded, as for values
+     * encrypted by the plugin itself.
+     */
+    static String decodeString(String raw) {
+        if (!isEncoded(raw)) {
+            return raw;
+        }
+        return raw.substring(2);
+    }
+
+    /**
+     * @return the stored value as bytes; strings are returned in {@code charset}.
+     */
+    static byte[] decodeBytes(String raw, Charset charset) {
+        if (!isEncoded(raw)) {
+            return raw.getBytes(charset);
+        }
+        if (raw.charAt(1) == TYPE_STRING) {
+            return raw.substring(2).getBytes(charset);
+        }
+        final int length = raw.length() - 2;
+        final char[] chars = new char[length];
+        raw.getChars(2, raw.length(), chars, 0);
+        final byte[] decoded = new byte[Base64Codec.getMaxDecodedLength(length)];
+        final int decodedLength = Base64Codec.decode(chars, length, decoded);
+        return decodedLength < 0 ? raw.getBytes(charset) : Arrays.copyOf(decoded, decodedLength);
+    }
+
+    private static boolean isEncoded(String raw) {
+        return raw != null && raw.length() >= 2 && raw.charAt(0) == MARKER
+                && (raw.charAt(1) == TYPE_BYTES || raw.charAt(1) == TYPE_STRING);
+    }
+}
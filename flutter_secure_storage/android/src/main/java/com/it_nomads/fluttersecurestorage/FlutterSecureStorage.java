@@ -3,40 +3,146 @@ package com.it_nomads.fluttersecurestorage;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Build;
+import android.os.SystemClock;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyProperties;
 import android.util.Base64;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.RequiresApi;
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
 
+import com.it_nomads.fluttersecurestorage.ciphers.CipherPool;
 import com.it_nomads.fluttersecurestorage.ciphers.StorageCipher;
+import com.it_nomads.fluttersecurestorage.ciphers.StorageCipher18Implementation;
 import com.it_nomads.fluttersecurestorage.ciphers.StorageCipherFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FlutterSecureStorage {
 
+    static final int RE_ENCRYPTION_BATCH_SIZE = 64;
+    static final int MIGRATION_BATCH_SIZE = 64;
+    static final long WRITE_BEHIND_DELAY_MILLIS = 50;
+    static final int MAX_PENDING_WRITES = 256;
     private final String TAG = "SecureStorageAndroid";
     private final Charset charset;
     private final Context applicationContext;
-    protected String ELEMENT_PREFERENCES_KEY_PREFIX = "VGhpcyBpcyB0aGUgcHJlZml4IGZvciBhIHNlY3VyZSBzdG9yYWdlCg";
-    protected Map<String, Object> options;
-    private String SHARED_PREFERENCES_NAME = "FlutterSecureStorage";
-    private SharedPreferences preferences;
+    // Key prefix of the configuration that opened the store, used by the calls without one.
+    protected final String ELEMENT_PREFERENCES_KEY_PREFIX;
+    // Key prefixes of all configurations using the store, see addKeyPrefix.
+    private final Set<String> keyPrefixes = new CopyOnWriteArraySet<>();
+    protected final StorageOptions options;
+    private final String SHARED_PREFERENCES_NAME;
+    private StorageBackend backend;
+    // Replaces the preferences selected by the options, see the constructor taking a backend.
+    private final StorageBackend suppliedBackend;
     private StorageCipher storageCipher;
     private StorageCipherFactory storageCipherFactory;
+    // Holds the algorithm markers the storage cipher is set up from, kept to retry a failed setup.
+    private StorageBackend storageCipherSource;
+    // Preferences left to migrate to EncryptedSharedPreferences once the storage cipher is set up.
+    private SharedPreferences pendingMigrationSource;
+    private SharedPreferences pendingMigrationTarget;
     private Boolean failedToUseEncryptedSharedPreferences = false;
+    private final LruCache<String, String> valueCache;
+    // Counted here rather than by the cache, so lookups that only compare values are left out.
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong cacheMissCount = new AtomicLong();
+    private final LargeValueStore largeValues;
+    private final StorageMetrics metrics;
+    private final ChangeListener changeListener;
+    private final Map<Integer, StorageCipher> storageCiphers = new ConcurrentHashMap<>();
+    // Sorted keys for scoped calls, loaded on first use and updated by every change after.
+    private final ConcurrentSkipListSet<String> keyIndex = new ConcurrentSkipListSet<>();
+    private volatile boolean keyIndexLoaded;
+    // Changes made with Durability.BUFFERED that are not in the preferences yet, by key.
+    private final Map<String, BatchOperation> pendingWrites = new ConcurrentHashMap<>();
+    final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private int storageAlgorithm;
+    // Algorithm of values stored without an algorithm tag, catches up with storageAlgorithm once
+    // re-encryption has finished.
+    private volatile int legacyStorageAlgorithm;
+    private volatile boolean reEncryptionFailed;
+    final AtomicBoolean reEncryptionScheduled = new AtomicBoolean();
+    private volatile boolean initialized;
+    private volatile int migratedEntryCount;
+    private volatile long migrationDurationMillis;
 
-    public FlutterSecureStorage(Context context) {
+    /**
+     * When a change reaches the preferences.
+     */
+    enum Durability {
+        // Kept in memory and stored together with other changes within WRITE_BEHIND_DELAY_MILLIS,
+        // lost if the process dies before. Reads see the change right away.
+        BUFFERED,
+        // Stored with apply(): in memory right away, written to disk in the background.
+        APPLY,
+        // Stored with commit(), written to disk before the call returns.
+        COMMIT
+    }
+
+    /**
+     * Notified of every change once it has been committed or applied, on the thread that made it.
+     */
+    @FunctionalInterface
+    interface ChangeListener {
+        String WRITE = "write";
+        String DELETE = "delete";
+        String CLEAR = "clear";
+        String MIGRATION = "migration";
+
+        /**
+         * @param key the changed key without prefix, or null for clear and migration.
+         */
+        void onChange(String sharedPreferencesName, String type, String key);
+    }
+
+    /**
+     * @param changeListener may be null.
+     */
+    public FlutterSecureStorage(Context context, StorageOptions options, StorageMetrics metrics, ChangeListener changeListener) {
+        this(context, options, metrics, changeListener, null);
+    }
+
+    /**
+     * Keeps the values in {@code backend} instead of the preferences selected by the options, for
+     * example an {@link InMemoryStorageBackend} on a plain JVM. The backend also holds the algorithm
+     * markers; EncryptedSharedPreferences is not used.
+     *
+     * @param backend may be null to use the preferences selected by the options.
+     */
+    FlutterSecureStorage(Context context, StorageOptions options, StorageMetrics metrics, ChangeListener changeListener, StorageBackend backend) {
+        suppliedBackend = backend;
         applicationContext = context.getApplicationContext();
+        this.options = options;
+        this.metrics = metrics;
+        this.changeListener = changeListener;
+        SHARED_PREFERENCES_NAME = options.sharedPreferencesName;
+        ELEMENT_PREFERENCES_KEY_PREFIX = options.preferencesKeyPrefix;
+        keyPrefixes.add(ELEMENT_PREFERENCES_KEY_PREFIX);
+        valueCache = options.cacheSize > 0 ? new LruCache<>(options.cacheSize) : null;
+        largeValues = new LargeValueStore(applicationContext, SHARED_PREFERENCES_NAME);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             charset = StandardCharsets.UTF_8;
@@ -46,187 +152,1015 @@ public class FlutterSecureStorage {
         }
     }
 
-    @SuppressWarnings({"ConstantConditions"})
-    boolean getResetOnError() {
-        return options.containsKey("resetOnError") && options.get("resetOnError").equals("true");
-    }
-
-    @SuppressWarnings({"ConstantConditions"})
     private boolean getUseEncryptedSharedPreferences() {
-        if (failedToUseEncryptedSharedPreferences) {
+        if (failedToUseEncryptedSharedPreferences || suppliedBackend != null) {
             return false;
         }
-        return options.containsKey("encryptedSharedPreferences") && options.get("encryptedSharedPreferences").equals("true") && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+        return options.useEncryptedSharedPreferences;
+    }
+
+    /**
+     * Records that a configuration with the key prefix {@code keyPrefix} uses this store. Its values
+     * are then included when values are re-encrypted or migrated, which work on the whole store.
+     */
+    void addKeyPrefix(String keyPrefix) {
+        keyPrefixes.add(keyPrefix);
+    }
+
+    /**
+     * @return whether {@code key} belongs to a value of any configuration using this store.
+     */
+    private boolean hasKeyPrefix(String key) {
+        for (String keyPrefix : keyPrefixes) {
+            if (key.contains(keyPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of reads answered from the decrypted value cache.
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * Number of reads that had to decrypt because the value was not cached.
+     */
+    public long getCacheMissCount() {
+        return cacheMissCount.get();
+    }
+
+    /**
+     * @return the cipher pools of the storage ciphers in use, the current one and any older one
+     * still needed to read values.
+     */
+    List<CipherPool> getCipherPools() {
+        final List<CipherPool> pools = new ArrayList<>();
+        for (StorageCipher cipher : storageCiphers.values()) {
+            if (cipher instanceof StorageCipher18Implementation) {
+                pools.add(((StorageCipher18Implementation) cipher).getCipherPool());
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * Looks {@code key} up in the value cache for a read, counting the hit or miss.
+     */
+    private String getCachedValue(String key) {
+        if (valueCache == null) {
+            return null;
+        }
+        final String cached = valueCache.get(key);
+        (cached != null ? cacheHitCount : cacheMissCount).incrementAndGet();
+        return cached;
     }
 
     boolean containsKey(String key) {
         ensureInitialized();
-        return preferences.contains(key);
+        final BatchOperation pending = pendingWrites.get(key);
+        if (pending != null) {
+            return pending.type == BatchOperation.Type.WRITE;
+        }
+        return backend.contains(key);
     }
 
     String read(String key) throws Exception {
         ensureInitialized();
 
-        String rawValue = preferences.getString(key, null);
+        final BatchOperation pending = pendingWrites.get(key);
+        if (pending != null) {
+            return getPendingValue(pending);
+        }
+        final String cached = getCachedValue(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String rawValue = backend.get(key);
+        String value;
+        if (getUseEncryptedSharedPreferences()) {
+            value = rawValue != null ? EncryptedPreferencesValue.decodeString(rawValue) : null;
+        } else {
+            final long start = metrics.start();
+            value = decodeRawValue(rawValue);
+            metrics.record(StorageMetrics.Phase.CRYPTO, start);
+        }
+        cacheValue(key, value);
+        return value;
+    }
+
+    /**
+     * Reads a value as bytes. Values written as strings are returned UTF-8 encoded.
+     */
+    byte[] readBytes(String key) throws Exception {
+        ensureInitialized();
+
+        final BatchOperation pending = pendingWrites.get(key);
+        if (pending != null) {
+            if (pending.type == BatchOperation.Type.DELETE) {
+                return null;
+            }
+            return pending.bytes != null ? pending.bytes.clone() : pending.value.getBytes(charset);
+        }
+        String rawValue = backend.get(key);
+        if (rawValue == null) {
+            return null;
+        }
         if (getUseEncryptedSharedPreferences()) {
-            return rawValue;
+            return EncryptedPreferencesValue.decodeBytes(rawValue, charset);
+        }
+        final long start = metrics.start();
+        try {
+            return decryptRawValue(rawValue, (plain, length, binary) -> Arrays.copyOf(plain, length));
+        } finally {
+            metrics.record(StorageMetrics.Phase.CRYPTO, start);
         }
-        return decodeRawValue(rawValue);
     }
 
-    @SuppressWarnings("unchecked")
     public Map<String, String> readAll() throws Exception {
+        return readAll(null);
+    }
+
+    public Map<String, String> readAll(String keyPrefix) throws Exception {
+        return readAll(ELEMENT_PREFERENCES_KEY_PREFIX, keyPrefix);
+    }
+
+    /**
+     * @param elementPrefix the key prefix of the calling configuration.
+     * @param keyPrefix     if not null, only keys starting with it are read. They are looked up in
+     *                      the key index, so other entries are neither enumerated nor decrypted.
+     */
+    Map<String, String> readAll(String elementPrefix, String keyPrefix) throws Exception {
         ensureInitialized();
 
-        Map<String, String> raw = (Map<String, String>) preferences.getAll();
+        Map<String, String> raw;
+        if (keyPrefix == null) {
+            raw = backend.getAll();
+        } else {
+            raw = new HashMap<>();
+            for (String key : getIndexedKeys(elementPrefix, keyPrefix)) {
+                final String value = backend.get(key);
+                if (value != null) {
+                    raw.put(key, value);
+                }
+            }
+        }
 
         Map<String, String> all = new HashMap<>();
+        Map<String, String> pending = new HashMap<>();
         for (Map.Entry<String, String> entry : raw.entrySet()) {
             String keyWithPrefix = entry.getKey();
-            if (keyWithPrefix.contains(ELEMENT_PREFERENCES_KEY_PREFIX)) {
-                String key = entry.getKey().replaceFirst(ELEMENT_PREFERENCES_KEY_PREFIX + '_', "");
-                if (getUseEncryptedSharedPreferences()) {
-                    all.put(key, entry.getValue());
+            if (keyWithPrefix.contains(elementPrefix)) {
+                String cached = getCachedValue(keyWithPrefix);
+                if (cached != null) {
+                    all.put(removePrefix(elementPrefix, keyWithPrefix), cached);
                 } else {
-                    String rawValue = entry.getValue();
-                    String value = decodeRawValue(rawValue);
+                    pending.put(keyWithPrefix, entry.getValue());
+                }
+            }
+        }
+
+        final long start = metrics.start();
+        Map<String, String> decoded;
+        if (getUseEncryptedSharedPreferences()) {
+            decoded = pending;
+            for (Map.Entry<String, String> entry : decoded.entrySet()) {
+                entry.setValue(EncryptedPreferencesValue.decodeString(entry.getValue()));
+            }
+        } else {
+            decoded = ParallelValueCodec.transform(pending, this::decodeRawValue);
+        }
+        metrics.record(StorageMetrics.Phase.CRYPTO, start);
+        for (Map.Entry<String, String> entry : decoded.entrySet()) {
+            all.put(removePrefix(elementPrefix, entry.getKey()), entry.getValue());
+            cacheValue(entry.getKey(), entry.getValue());
+        }
 
-                    all.put(key, value);
+        final String from = elementPrefix + '_' + (keyPrefix != null ? keyPrefix : "");
+        for (BatchOperation operation : pendingWrites.values()) {
+            if (operation.key.startsWith(from)) {
+                if (operation.type == BatchOperation.Type.WRITE) {
+                    all.put(removePrefix(elementPrefix, operation.key), getPendingValue(operation));
+                } else {
+                    all.remove(removePrefix(elementPrefix, operation.key));
                 }
             }
         }
         return all;
     }
 
+    private String getPendingValue(BatchOperation operation) {
+        if (operation.type == BatchOperation.Type.DELETE) {
+            return null;
+        }
+        return operation.bytes != null ? toBase64(operation.bytes, operation.bytes.length) : operation.value;
+    }
+
+    List<String> keys(String keyPrefix) {
+        return keys(ELEMENT_PREFERENCES_KEY_PREFIX, keyPrefix);
+    }
+
+    /**
+     * Lists the stored keys without reading or decrypting any value. Keys come from the key index,
+     * so only the first call enumerates the preferences.
+     *
+     * @param elementPrefix the key prefix of the calling configuration.
+     * @param keyPrefix     if not null, only keys starting with it are listed.
+     * @return the keys without the element prefix, in sorted order.
+     */
+    List<String> keys(String elementPrefix, String keyPrefix) {
+        ensureInitialized();
+
+        final List<String> keys = getIndexedKeys(elementPrefix, keyPrefix != null ? keyPrefix : "");
+        for (int i = 0; i < keys.size(); i++) {
+            keys.set(i, removePrefix(elementPrefix, keys.get(i)));
+        }
+        return keys;
+    }
+
+    private static String removePrefix(String elementPrefix, String keyWithPrefix) {
+        final int length = elementPrefix.length();
+        if (keyWithPrefix.startsWith(elementPrefix) && keyWithPrefix.length() > length && keyWithPrefix.charAt(length) == '_') {
+            return keyWithPrefix.substring(length + 1);
+        }
+        return keyWithPrefix;
+    }
+
+    /**
+     * Removes the longest key prefix of the configurations using this store from {@code keyWithPrefix}.
+     */
+    private String removeKeyPrefix(String keyWithPrefix) {
+        String longest = null;
+        for (String keyPrefix : keyPrefixes) {
+            if (keyWithPrefix.startsWith(keyPrefix + '_') && (longest == null || keyPrefix.length() > longest.length())) {
+                longest = keyPrefix;
+            }
+        }
+        return longest != null ? removePrefix(longest, keyWithPrefix) : keyWithPrefix;
+    }
+
     void write(String key, String value) throws Exception {
+        write(key, value, Durability.APPLY);
+    }
+
+    void write(String key, String value, Durability durability) throws Exception {
+        mutate(BatchOperation.write(key, value), durability);
+    }
+
+    /**
+     * Stores {@code value} as bytes, encrypted without converting it to a string first. Reading it
+     * with {@link #read} gives the bytes Base64 encoded.
+     */
+    void writeBytes(String key, byte[] value) throws Exception {
+        writeBytes(key, value, Durability.APPLY);
+    }
+
+    void writeBytes(String key, byte[] value, Durability durability) throws Exception {
+        mutate(BatchOperation.writeBytes(key, value), durability);
+    }
+
+    public void delete(String key) throws Exception {
+        delete(key, Durability.APPLY);
+    }
+
+    void delete(String key, Durability durability) throws Exception {
+        mutate(BatchOperation.delete(key), durability);
+    }
+
+    private void mutate(BatchOperation operation, Durability durability) throws Exception {
         ensureInitialized();
 
-        SharedPreferences.Editor editor = preferences.edit();
+        final boolean unchanged = isUnchanged(operation);
+        if (durability == Durability.BUFFERED) {
+            if (!unchanged) {
+                pendingWrites.put(operation.key, operation);
+                updateKeyIndex(operation.key, operation.type == BatchOperation.Type.WRITE);
+                if (pendingWrites.size() >= MAX_PENDING_WRITES) {
+                    apply(Collections.<BatchOperation>emptyList(), Durability.APPLY);
+                }
+            }
+            return;
+        }
+        if (unchanged && pendingWrites.isEmpty() && durability == Durability.APPLY) {
+            return;
+        }
+        apply(unchanged ? Collections.<BatchOperation>emptyList() : Collections.singletonList(operation), durability);
+    }
 
-        if (getUseEncryptedSharedPreferences()) {
-            editor.putString(key, value);
-        } else {
-            byte[] result = storageCipher.encrypt(value.getBytes(charset));
-            editor.putString(key, Base64.encodeToString(result, 0));
+    /**
+     * Whether {@code operation} would leave the key as it is, as far as that is known without
+     * decrypting anything: from a buffered change, the value cache or, for a delete, the key being
+     * absent. Stored values are never read for this, EncryptedSharedPreferences would decrypt them.
+     */
+    private boolean isUnchanged(BatchOperation operation) {
+        final BatchOperation pending = pendingWrites.get(operation.key);
+        if (pending != null) {
+            return pending.hasSameValue(operation);
+        }
+        if (operation.type == BatchOperation.Type.DELETE) {
+            return !backend.contains(operation.key);
         }
-        editor.apply();
+        return operation.value != null && valueCache != null && operation.value.equals(valueCache.get(operation.key));
     }
 
-    public void delete(String key) {
+    /**
+     * Stores the buffered changes.
+     *
+     * @param durability {@link Durability#COMMIT} also waits for earlier applied changes to reach
+     *                   the disk, even if nothing was buffered.
+     */
+    void flush(Durability durability) throws Exception {
         ensureInitialized();
 
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.remove(key);
-        editor.apply();
+        if (pendingWrites.isEmpty() && durability != Durability.COMMIT) {
+            return;
+        }
+        apply(Collections.<BatchOperation>emptyList(), durability);
+    }
+
+    boolean hasPendingWrites() {
+        return !pendingWrites.isEmpty();
+    }
+
+    List<Boolean> batch(List<BatchOperation> operations) throws Exception {
+        return batch(operations, Durability.APPLY);
+    }
+
+    /**
+     * Applies writes and deletes in order as a single batch, so the whole batch is stored
+     * with one encryption pass and one disk write.
+     *
+     * @return for every operation, whether the key held a value right before it was applied.
+     */
+    List<Boolean> batch(List<BatchOperation> operations, Durability durability) throws Exception {
+        ensureInitialized();
+
+        if (durability == Durability.BUFFERED) {
+            final List<Boolean> results = new ArrayList<>(operations.size());
+            for (BatchOperation operation : operations) {
+                results.add(containsKey(operation.key));
+                mutate(operation, durability);
+            }
+            return results;
+        }
+        return apply(operations, durability);
+    }
+
+    /**
+     * Stores the buffered changes followed by {@code operations} as a single batch.
+     *
+     * @return for every operation, whether the key held a value right before it was applied.
+     */
+    private List<Boolean> apply(List<BatchOperation> operations, Durability durability) throws Exception {
+        final List<BatchOperation> pending;
+        final List<BatchOperation> all;
+        if (pendingWrites.isEmpty()) {
+            pending = Collections.emptyList();
+            all = operations;
+        } else {
+            pending = new ArrayList<>(pendingWrites.values());
+            all = new ArrayList<>(pending.size() + operations.size());
+            all.addAll(pending);
+            all.addAll(operations);
+        }
+
+        // Encrypt everything first so a failing value leaves the store untouched.
+        final long start = metrics.start();
+        final List<String> encoded = new ArrayList<>(all.size());
+        for (BatchOperation operation : all) {
+            encoded.add(operation.type == BatchOperation.Type.WRITE ? encodeOperationValue(operation) : null);
+        }
+        metrics.record(StorageMetrics.Phase.CRYPTO, start);
+
+        final Map<String, Boolean> present = new HashMap<>();
+        final List<Boolean> results = new ArrayList<>(all.size());
+        // Value files that may become unreferenced, and the ones the batch leaves in place.
+        final Set<String> replacedFiles = new HashSet<>();
+        final Map<String, String> finalFiles = new HashMap<>();
+        final StorageBackend.Batch batch = backend.edit();
+        for (int i = 0; i < all.size(); i++) {
+            final BatchOperation operation = all.get(i);
+            final Boolean wasPresent = present.get(operation.key);
+            if (wasPresent == null) {
+                results.add(backend.contains(operation.key));
+                addIfNotNull(replacedFiles, getStoredValueFileName(operation.key));
+            } else {
+                results.add(wasPresent);
+            }
+            if (operation.type == BatchOperation.Type.WRITE) {
+                final String newFile = getUseEncryptedSharedPreferences() ? null : getValueFileName(encoded.get(i));
+                addIfNotNull(replacedFiles, newFile);
+                finalFiles.put(operation.key, newFile);
+                batch.put(operation.key, encoded.get(i));
+                present.put(operation.key, true);
+            } else {
+                finalFiles.remove(operation.key);
+                batch.remove(operation.key);
+                present.put(operation.key, false);
+            }
+        }
+        final boolean involvesFiles = !replacedFiles.isEmpty();
+        replacedFiles.removeAll(finalFiles.values());
+        final boolean persisted = persist(batch, involvesFiles || durability == Durability.COMMIT);
+        if (persisted) {
+            for (String file : replacedFiles) {
+                largeValues.delete(file);
+            }
+        }
+
+        for (BatchOperation operation : pending) {
+            pendingWrites.remove(operation.key, operation);
+        }
+        for (BatchOperation operation : all) {
+            updateKeyIndex(operation.key, operation.type == BatchOperation.Type.WRITE);
+            if (operation.type == BatchOperation.Type.WRITE) {
+                if (operation.value != null) {
+                    cacheValue(operation.key, operation.value);
+                } else if (valueCache != null) {
+                    valueCache.remove(operation.key);
+                }
+                notifyChange(ChangeListener.WRITE, operation.key);
+            } else {
+                if (valueCache != null) {
+                    valueCache.remove(operation.key);
+                }
+                notifyChange(ChangeListener.DELETE, operation.key);
+            }
+        }
+        if (!persisted && durability == Durability.COMMIT) {
+            throw new IOException("Failed to commit preferences");
+        }
+        return pending.isEmpty() ? results : new ArrayList<>(results.subList(pending.size(), results.size()));
+    }
+
+    /**
+     * @return the value of a write as it is stored in the preferences.
+     */
+    private String encodeOperationValue(BatchOperation operation) throws Exception {
+        if (getUseEncryptedSharedPreferences()) {
+            return encodeEncryptedPreferencesValue(operation);
+        }
+        if (operation.bytes != null) {
+            return encryptRawValue(operation.bytes, operation.bytes.length, StoredValue.FLAG_BINARY);
+        }
+        return encodeRawValue(operation.value);
+    }
+
+    private static String encodeEncryptedPreferencesValue(BatchOperation operation) {
+        return operation.bytes != null
+                ? EncryptedPreferencesValue.encodeBytes(toBase64(operation.bytes, operation.bytes.length))
+                : EncryptedPreferencesValue.encodeString(operation.value);
     }
 
     void deleteAll() {
         ensureInitialized();
 
-        final SharedPreferences.Editor editor = preferences.edit();
-        editor.clear();
+        pendingWrites.clear();
+        final StorageBackend.Batch batch = backend.edit();
+        batch.clear();
         if (!getUseEncryptedSharedPreferences()) {
-            storageCipherFactory.storeCurrentAlgorithms(editor);
+            putAll(batch, storageCipherFactory.getCurrentAlgorithms());
+            // Nothing is left to re-encrypt.
+            legacyStorageAlgorithm = storageAlgorithm;
+        }
+        // Like every change that drops file references, the clear reaches the disk before the files
+        // are deleted.
+        final boolean hasFiles = largeValues.hasFiles();
+        if (persist(batch, hasFiles) && hasFiles) {
+            largeValues.deleteAll();
         }
-        editor.apply();
+        keyIndex.clear();
+        if (valueCache != null) {
+            valueCache.evictAll();
+        }
+        notifyChange(ChangeListener.CLEAR, null);
+    }
+
+    void deleteAll(String keyPrefix) {
+        deleteAll(ELEMENT_PREFERENCES_KEY_PREFIX, keyPrefix);
     }
 
-    @SuppressWarnings({"ConstantConditions"})
-    private void ensureInitialized() {
-        // Check if already initialized.
-        // TODO: Disable for now because this will break mixed usage of secureSharedPreference
-//        if (preferences != null) return;
+    /**
+     * Deletes the keys starting with {@code keyPrefix}, found through the key index, with a single
+     * batch.
+     *
+     * @param elementPrefix the key prefix of the calling configuration.
+     */
+    void deleteAll(String elementPrefix, String keyPrefix) {
+        ensureInitialized();
 
-        if (options.containsKey("sharedPreferencesName") && !((String) options.get("sharedPreferencesName")).isEmpty()) {
-            SHARED_PREFERENCES_NAME = (String) options.get("sharedPreferencesName");
+        final List<String> keys = getIndexedKeys(elementPrefix, keyPrefix);
+        if (keys.isEmpty()) {
+            return;
+        }
+        final Set<String> files = new HashSet<>();
+        final StorageBackend.Batch batch = backend.edit();
+        for (String key : keys) {
+            pendingWrites.remove(key);
+            addIfNotNull(files, getStoredValueFileName(key));
+            batch.remove(key);
+        }
+        if (persist(batch, !files.isEmpty())) {
+            for (String file : files) {
+                largeValues.delete(file);
+            }
         }
+        for (String key : keys) {
+            keyIndex.remove(key);
+            if (valueCache != null) {
+                valueCache.remove(key);
+            }
+            notifyChange(ChangeListener.DELETE, key);
+        }
+    }
 
-        if (options.containsKey("preferencesKeyPrefix") && !((String) options.get("preferencesKeyPrefix")).isEmpty()) {
-            ELEMENT_PREFERENCES_KEY_PREFIX = (String) options.get("preferencesKeyPrefix");
+    private void notifyChange(String type, String keyWithPrefix) {
+        if (changeListener != null) {
+            changeListener.onChange(SHARED_PREFERENCES_NAME, type, keyWithPrefix != null ? removeKeyPrefix(keyWithPrefix) : null);
         }
+    }
 
-        SharedPreferences nonEncryptedPreferences = applicationContext.getSharedPreferences(
-                SHARED_PREFERENCES_NAME,
-                Context.MODE_PRIVATE
-        );
-        if (storageCipher == null) {
-            try {
-                initStorageCipher(nonEncryptedPreferences);
+    /**
+     * @return the stored keys starting with {@code keyPrefix}, with the element prefix, in order.
+     */
+    private List<String> getIndexedKeys(String elementPrefix, String keyPrefix) {
+        ensureKeyIndexLoaded();
+        final String from = elementPrefix + '_' + keyPrefix;
+        final List<String> keys = new ArrayList<>();
+        for (String key : keyIndex.tailSet(from)) {
+            if (!key.startsWith(from)) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "StorageCipher initialization failed", e);
+    private void ensureKeyIndexLoaded() {
+        if (keyIndexLoaded) {
+            return;
+        }
+        synchronized (keyIndex) {
+            if (keyIndexLoaded) {
+                return;
+            }
+            // Every key is indexed, configurations with other key prefixes may share the store.
+            keyIndex.addAll(backend.getAll().keySet());
+            for (BatchOperation operation : pendingWrites.values()) {
+                if (operation.type == BatchOperation.Type.WRITE) {
+                    keyIndex.add(operation.key);
+                } else {
+                    keyIndex.remove(operation.key);
+                }
             }
+            keyIndexLoaded = true;
         }
+    }
+
+    private void updateKeyIndex(String key, boolean present) {
+        if (!keyIndexLoaded) {
+            // Waits for a load in progress, which may have read the preferences before this change.
+            synchronized (keyIndex) {
+                if (!keyIndexLoaded) {
+                    return;
+                }
+            }
+        }
+        if (present) {
+            keyIndex.add(key);
+        } else {
+            keyIndex.remove(key);
+        }
+    }
+
+    private void cacheValue(String key, String value) {
+        // Values kept in files are not cached, the cache should stay small.
+        if (valueCache != null && value != null && !isLargeValue(value)) {
+            valueCache.put(key, value);
+        }
+    }
+
+    private boolean isLargeValue(String value) {
+        return options.largeValueThreshold > 0 && value.length() > options.largeValueThreshold;
+    }
+
+    /**
+     * Changes that add or remove value files are committed synchronously, so the preferences never
+     * point at a file that has already been deleted.
+     *
+     * @return false if a synchronous commit failed, in which case no file may be deleted.
+     */
+    private boolean persist(StorageBackend.Batch batch, boolean durable) {
+        final long start = metrics.start();
+        try {
+            if (!batch.commit(durable)) {
+                Log.e(TAG, "Failed to commit preferences");
+                return false;
+            }
+            return true;
+        } finally {
+            metrics.record(StorageMetrics.Phase.IO, start);
+        }
+    }
+
+    /**
+     * @return the value file currently referenced by {@code key}, if any.
+     */
+    private String getStoredValueFileName(String key) {
+        if (getUseEncryptedSharedPreferences()) {
+            return null;
+        }
+        return getValueFileName(backend.get(key));
+    }
+
+    private static String getValueFileName(String rawValue) {
+        final StoredValue storedValue = StoredValue.parse(rawValue);
+        return storedValue != null && storedValue.hasFlag(StoredValue.FLAG_FILE) ? storedValue.payload : null;
+    }
+
+    private static void addIfNotNull(Set<String> set, String value) {
+        if (value != null) {
+            set.add(value);
+        }
+    }
+
+    private void removeUnreferencedValueFiles(StorageBackend source) {
+        final Set<String> referenced = new HashSet<>();
+        for (String value : source.getAll().values()) {
+            addIfNotNull(referenced, getValueFileName(value));
+        }
+        largeValues.deleteUnreferenced(referenced);
+    }
+
+    private static void putAll(StorageBackend.Batch batch, Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private synchronized void ensureInitialized() {
+        // Each instance serves a single configuration, so initialization only has to happen once,
+        // except for the storage cipher: a failed setup, for example while the Keystore is locked,
+        // is retried on the next call.
+        if (initialized) return;
+
+        final long start = metrics.start();
+        if (backend == null) {
+            initialize();
+        } else {
+            retryStorageCipher();
+        }
+        initialized = storageCipher != null;
+        metrics.record(StorageMetrics.Phase.INIT, start);
+    }
+
+    /**
+     * Initializes preferences and ciphers ahead of the first call. Calls made meanwhile wait only for
+     * the part of the initialization that is still running.
+     */
+    void prewarm() {
+        ensureInitialized();
+    }
+
+    /**
+     * @return whether the next call would find preferences and ciphers ready. Does not block.
+     */
+    boolean isInitialized() {
+        return initialized;
+    }
+
+    private void initialize() {
+        if (suppliedBackend != null) {
+            storageCipherSource = suppliedBackend;
+            initStorageCipherOrLog();
+            backend = suppliedBackend;
+            removeUnreferencedValueFiles(backend);
+            return;
+        }
+        SharedPreferences nonEncryptedPreferences = openNonEncryptedPreferences();
+        final StorageBackend nonEncryptedBackend = openNonEncryptedBackend(nonEncryptedPreferences);
+        storageCipherSource = nonEncryptedBackend;
+        initStorageCipherOrLog();
         if (getUseEncryptedSharedPreferences() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             try {
-                preferences = initializeEncryptedSharedPreferencesManager(applicationContext);
-                checkAndMigrateToEncrypted(nonEncryptedPreferences, preferences);
+                final SharedPreferences encryptedPreferences = initializeEncryptedSharedPreferencesManager(applicationContext);
+                if (storageCipher != null) {
+                    checkAndMigrateToEncrypted(nonEncryptedPreferences, encryptedPreferences);
+                } else {
+                    // The values left to migrate can only be decrypted with the storage cipher.
+                    pendingMigrationSource = nonEncryptedPreferences;
+                    pendingMigrationTarget = encryptedPreferences;
+                }
+                backend = new SharedPreferencesBackend(encryptedPreferences);
             } catch (Exception e) {
                 Log.e(TAG, "EncryptedSharedPreferences initialization failed", e);
-                preferences = nonEncryptedPreferences;
+                backend = nonEncryptedBackend;
                 failedToUseEncryptedSharedPreferences = true;
             }
         } else {
-            preferences = nonEncryptedPreferences;
+            backend = nonEncryptedBackend;
+            removeUnreferencedValueFiles(backend);
+        }
+    }
+
+    /**
+     * Sets up the storage cipher again after it failed, then runs the migration it held back.
+     */
+    private void retryStorageCipher() {
+        initStorageCipherOrLog();
+        if (storageCipher != null && pendingMigrationSource != null) {
+            checkAndMigrateToEncrypted(pendingMigrationSource, pendingMigrationTarget);
+            pendingMigrationSource = null;
+            pendingMigrationTarget = null;
+        }
+    }
+
+    private void initStorageCipherOrLog() {
+        try {
+            initStorageCipher(storageCipherSource);
+        } catch (Exception e) {
+            Log.e(TAG, "StorageCipher initialization failed", e);
+        }
+    }
+
+    /**
+     * Opens the SharedPreferences XML file, split into shards if configured. When the log is not
+     * selected, entries left in a log from an earlier configuration are moved back into the file.
+     */
+    private SharedPreferences openNonEncryptedPreferences() {
+        // Other layouts read a single file, shards left from an earlier configuration are merged back.
+        final boolean sharded = options.backend == StorageOptions.Backend.SHARED_PREFERENCES && !getUseEncryptedSharedPreferences();
+        SharedPreferences sharedPreferences = ShardedSharedPreferences.open(
+                applicationContext,
+                SHARED_PREFERENCES_NAME,
+                sharded ? options.shardCount : 1
+        );
+        if ((options.backend != StorageOptions.Backend.LOG || getUseEncryptedSharedPreferences())
+                && LogStorageBackend.getFile(applicationContext, SHARED_PREFERENCES_NAME).exists()) {
+            migrateFromLog(sharedPreferences);
+        }
+        return sharedPreferences;
+    }
+
+    /**
+     * Opens the store used for values encrypted by the plugin itself: {@code sharedPreferences}, or
+     * the append-only log when that backend is selected.
+     */
+    private StorageBackend openNonEncryptedBackend(SharedPreferences sharedPreferences) {
+        final StorageBackend preferencesBackend = new SharedPreferencesBackend(sharedPreferences);
+        if (options.backend != StorageOptions.Backend.LOG || getUseEncryptedSharedPreferences()) {
+            return preferencesBackend;
+        }
+        try {
+            final LogStorageBackend log = LogStorageBackend.get(applicationContext, SHARED_PREFERENCES_NAME, charset);
+            final Map<String, String> entries = preferencesBackend.getAll();
+            if (!entries.isEmpty() && copyEntries(entries, log)) {
+                preferencesBackend.edit().clear().commit(true);
+            }
+            return log;
+        } catch (Exception e) {
+            Log.e(TAG, "Log storage initialization failed", e);
+            return preferencesBackend;
+        }
+    }
+
+    /**
+     * Moves the entries of the log back into {@code target} and deletes the log.
+     */
+    private void migrateFromLog(SharedPreferences target) {
+        try {
+            final LogStorageBackend log = LogStorageBackend.get(applicationContext, SHARED_PREFERENCES_NAME, charset);
+            if (copyEntries(log.getAll(), new SharedPreferencesBackend(target))) {
+                log.delete();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Moving entries out of the log failed", e);
         }
     }
 
-    private void initStorageCipher(SharedPreferences source) throws Exception {
-        storageCipherFactory = new StorageCipherFactory(source, options);
+    /**
+     * Copies {@code entries} into {@code target} with one durable commit. Values are copied as
+     * stored, together with the algorithm markers, so nothing has to be decrypted.
+     */
+    private static boolean copyEntries(Map<String, String> entries, StorageBackend target) {
+        final StorageBackend.Batch batch = target.edit();
+        putAll(batch, entries);
+        return batch.commit(true);
+    }
+
+    private void initStorageCipher(StorageBackend source) throws Exception {
+        storageCipherFactory = new StorageCipherFactory(
+                source.get(StorageCipherFactory.ELEMENT_PREFERENCES_ALGORITHM_KEY),
+                source.get(StorageCipherFactory.ELEMENT_PREFERENCES_ALGORITHM_STORAGE),
+                options.options
+        );
         if (getUseEncryptedSharedPreferences()) {
             storageCipher = storageCipherFactory.getSavedStorageCipher(applicationContext);
-        } else if (storageCipherFactory.requiresReEncryption()) {
-            reEncryptPreferences(storageCipherFactory, source);
+            storageAlgorithm = storageCipherFactory.getSavedStorageAlgorithmCode();
+            legacyStorageAlgorithm = storageAlgorithm;
         } else {
-            storageCipher = storageCipherFactory.getCurrentStorageCipher(applicationContext);
+            if (storageCipherFactory.requiresKeyRewrap()) {
+                rewrapKeys(storageCipherFactory, source);
+            }
+            storageAlgorithm = storageCipherFactory.getCurrentStorageAlgorithmCode();
+            legacyStorageAlgorithm = storageCipherFactory.getSavedStorageAlgorithmCode();
+            storageCipher = storageCipherFactory.getStorageCipher(applicationContext, storageAlgorithm);
         }
+        storageCiphers.put(storageAlgorithm, storageCipher);
     }
 
-    private void reEncryptPreferences(StorageCipherFactory storageCipherFactory, SharedPreferences source) throws Exception {
+    /**
+     * A new key algorithm only changes how the AES key is wrapped, values stay as they are.
+     */
+    private void rewrapKeys(StorageCipherFactory storageCipherFactory, StorageBackend source) {
         try {
-            storageCipher = storageCipherFactory.getSavedStorageCipher(applicationContext);
-            final Map<String, String> cache = new HashMap<>();
-            for (Map.Entry<String, ?> entry : source.getAll().entrySet()) {
-                Object v = entry.getValue();
-                String key = entry.getKey();
-                if (v instanceof String && key.contains(ELEMENT_PREFERENCES_KEY_PREFIX)) {
-                    final String decodedValue = decodeRawValue((String) v);
-                    cache.put(key, decodedValue);
+            storageCipherFactory.rewrapKeys(applicationContext);
+            final StorageBackend.Batch batch = source.edit();
+            putAll(batch, storageCipherFactory.getCurrentKeyAlgorithm());
+            if (!batch.commit(true)) {
+                Log.e(TAG, "Failed to store key algorithm");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Re-wrapping the storage key failed, keeping the saved key algorithm", e);
+        }
+    }
+
+    /**
+     * Whether values encrypted with an older storage algorithm are left to re-encrypt.
+     */
+    boolean isReEncryptionPending() {
+        ensureInitialized();
+        return !getUseEncryptedSharedPreferences() && storageCipher != null && !reEncryptionFailed
+                && legacyStorageAlgorithm != storageAlgorithm;
+    }
+
+    /**
+     * Re-encrypts up to {@link #RE_ENCRYPTION_BATCH_SIZE} values that still use an older storage
+     * algorithm. Progress is kept in the values themselves through their algorithm tag, so an
+     * interrupted migration simply continues with the remaining values. Once none are left, the tags
+     * are dropped and the current algorithms are recorded in the same commit.
+     *
+     * @return true while more work remains.
+     */
+    boolean reEncryptBatch() {
+        if (!isReEncryptionPending()) {
+            return false;
+        }
+        try {
+            final Map<String, String> stale = new HashMap<>();
+            final Map<String, String> tagged = new HashMap<>();
+            for (Map.Entry<String, String> entry : backend.getAll().entrySet()) {
+                if (!hasKeyPrefix(entry.getKey())) {
+                    continue;
+                }
+                final String rawValue = entry.getValue();
+                final StoredValue storedValue = StoredValue.parse(rawValue);
+                final int algorithm = storedValue == null || storedValue.algorithm == StoredValue.NO_ALGORITHM
+                        ? legacyStorageAlgorithm
+                        : storedValue.algorithm;
+                if (algorithm != storageAlgorithm) {
+                    if (stale.size() < RE_ENCRYPTION_BATCH_SIZE) {
+                        stale.put(entry.getKey(), rawValue);
+                    }
+                } else if (storedValue != null && storedValue.algorithm != StoredValue.NO_ALGORITHM) {
+                    tagged.put(entry.getKey(), rawValue);
+                }
+            }
+
+            final StorageBackend.Batch batch = backend.edit();
+            if (!stale.isEmpty()) {
+                final Map<String, String> reEncrypted = ParallelValueCodec.transform(stale, this::reEncryptRawValue);
+                final Set<String> replacedFiles = new HashSet<>();
+                for (Map.Entry<String, String> entry : reEncrypted.entrySet()) {
+                    addIfNotNull(replacedFiles, getValueFileName(stale.get(entry.getKey())));
+                    batch.put(entry.getKey(), entry.getValue());
+                }
+                if (persist(batch, true)) {
+                    for (String file : replacedFiles) {
+                        largeValues.delete(file);
+                    }
                 }
+                return true;
+            }
+
+            for (Map.Entry<String, String> entry : tagged.entrySet()) {
+                final StoredValue storedValue = StoredValue.parse(entry.getValue());
+                batch.put(entry.getKey(), StoredValue.encodeIfNeeded(storedValue.flags, StoredValue.NO_ALGORITHM, storedValue.payload));
             }
-            storageCipher = storageCipherFactory.getCurrentStorageCipher(applicationContext);
-            final SharedPreferences.Editor editor = source.edit();
-            for (Map.Entry<String, String> entry : cache.entrySet()) {
-                byte[] result = storageCipher.encrypt(entry.getValue().getBytes(charset));
-                editor.putString(entry.getKey(), Base64.encodeToString(result, 0));
+            putAll(batch, storageCipherFactory.getCurrentAlgorithms());
+            if (persist(batch, true)) {
+                legacyStorageAlgorithm = storageAlgorithm;
             }
-            storageCipherFactory.storeCurrentAlgorithms(editor);
-            editor.apply();
         } catch (Exception e) {
             Log.e(TAG, "re-encryption failed", e);
-            storageCipher = storageCipherFactory.getSavedStorageCipher(applicationContext);
+            reEncryptionFailed = true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the cipher for an algorithm code from a value header.
+     */
+    private StorageCipher getStorageCipher(int algorithm) throws Exception {
+        if (algorithm == StoredValue.NO_ALGORITHM) {
+            algorithm = legacyStorageAlgorithm;
+        }
+        StorageCipher cipher = storageCiphers.get(algorithm);
+        if (cipher == null) {
+            synchronized (storageCiphers) {
+                cipher = storageCiphers.get(algorithm);
+                if (cipher == null) {
+                    cipher = storageCipherFactory.getStorageCipher(applicationContext, algorithm);
+                    storageCiphers.put(algorithm, cipher);
+                }
+            }
         }
+        return cipher;
     }
 
+    /**
+     * Moves values from the plugin's own preferences into EncryptedSharedPreferences in batches, with
+     * one commit per batch on each side. A value leaves the source only after the target commit
+     * holding it, so after an interruption every value still in the source is copied again. Copying
+     * overwrites, which also keeps values written to the source while EncryptedSharedPreferences
+     * could not be used.
+     */
     private void checkAndMigrateToEncrypted(SharedPreferences source, SharedPreferences target) {
         try {
+            final TreeMap<String, String> pending = new TreeMap<>();
             for (Map.Entry<String, ?> entry : source.getAll().entrySet()) {
                 Object v = entry.getValue();
                 String key = entry.getKey();
-                if (v instanceof String && key.contains(ELEMENT_PREFERENCES_KEY_PREFIX)) {
-                    final String decodedValue = decodeRawValue((String) v);
-                    target.edit().putString(key, (decodedValue)).apply();
-                    source.edit().remove(key).apply();
+                if (v instanceof String && hasKeyPrefix(key)) {
+                    pending.put(key, (String) v);
+                }
+            }
+            final long start = SystemClock.elapsedRealtime();
+            final int total = pending.size();
+            int migrated = 0;
+            while (!pending.isEmpty()) {
+                final List<String> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+                final SharedPreferences.Editor targetEditor = target.edit();
+                for (Map.Entry<String, String> entry : pending.entrySet()) {
+                    if (batch.size() == MIGRATION_BATCH_SIZE) {
+                        break;
+                    }
+                    targetEditor.putString(entry.getKey(), toEncryptedPreferencesValue(entry.getValue()));
+                    batch.add(entry.getKey());
+                }
+                commitOrThrow(targetEditor);
+
+                final SharedPreferences.Editor sourceEditor = source.edit();
+                for (String key : batch) {
+                    sourceEditor.remove(key);
+                    pending.remove(key);
                 }
+                commitOrThrow(sourceEditor);
+                migrated += batch.size();
+                Log.i(TAG, "Migrated " + migrated + "/" + total + " entries to EncryptedSharedPreferences");
             }
+
             final SharedPreferences.Editor sourceEditor = source.edit();
             storageCipherFactory.removeCurrentAlgorithms(sourceEditor);
             sourceEditor.apply();
+            // EncryptedSharedPreferences holds migrated values inline.
+            largeValues.deleteAll();
+
+            if (migrated > 0) {
+                migratedEntryCount = migrated;
+                migrationDurationMillis = SystemClock.elapsedRealtime() - start;
+                Log.i(TAG, "Migration to EncryptedSharedPreferences finished: " + migrated + " entries in " + migrationDurationMillis + " ms");
+                notifyChange(ChangeListener.MIGRATION, null);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Data migration failed", e);
         }
     }
 
+    private static void commitOrThrow(SharedPreferences.Editor editor) throws IOException {
+        if (!editor.commit()) {
+            throw new IOException("Failed to commit preferences");
+        }
+    }
+
+    /**
+     * Number of entries moved by the last migration to EncryptedSharedPreferences.
+     */
+    public int getMigratedEntryCount() {
+        return migratedEntryCount;
+    }
+
+    /**
+     * Duration of the last migration to EncryptedSharedPreferences in milliseconds.
+     */
+    public long getMigrationDurationMillis() {
+        return migrationDurationMillis;
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.M)
     private SharedPreferences initializeEncryptedSharedPreferencesManager(Context context) throws GeneralSecurityException, IOException {
         MasterKey key = new MasterKey.Builder(context)
@@ -246,13 +1180,148 @@ public class FlutterSecureStorage {
         );
     }
 
+    /**
+     * Receives a decrypted value while it is still in a scratch buffer, which is cleared afterwards.
+     */
+    @FunctionalInterface
+    private interface PlainValueReader<T> {
+        T read(byte[] plain, int length, boolean binary) throws Exception;
+    }
+
+    private String encodeRawValue(String value) throws Exception {
+        final ByteBuffer text = ValueBuffers.get().encodeText(value, charset);
+        final byte[] plain = text.array();
+        final int length = text.limit();
+        try {
+            return encryptRawValue(plain, length, 0);
+        } finally {
+            ValueBuffers.clear(plain, length);
+        }
+    }
+
+    private String encryptRawValue(byte[] plain, int length, int flags) throws Exception {
+        if (options.compressionThreshold > 0 && length > options.compressionThreshold) {
+            final ValueBuffers buffers = ValueBuffers.get();
+            final byte[] deflated = buffers.deflated(length);
+            final int deflatedLength = ValueCompression.deflate(buffers.deflater(), plain, length, deflated);
+            // Values that do not shrink are stored as they are.
+            if (deflatedLength > 0) {
+                try {
+                    return encryptPlainValue(deflated, deflatedLength, flags | StoredValue.FLAG_COMPRESSED);
+                } finally {
+                    ValueBuffers.clear(deflated, deflatedLength);
+                }
+            }
+        }
+        return encryptPlainValue(plain, length, flags);
+    }
+
+    private String encryptPlainValue(byte[] plain, int length, int flags) throws Exception {
+        // Values only carry an algorithm tag while older values still use another algorithm.
+        final int algorithm = storageAlgorithm == legacyStorageAlgorithm ? StoredValue.NO_ALGORITHM : storageAlgorithm;
+        if (options.largeValueThreshold > 0 && length > options.largeValueThreshold) {
+            return StoredValue.encode(flags | StoredValue.FLAG_FILE, algorithm, largeValues.write(storageCipher, plain, length));
+        }
+        return StoredValue.encodeIfNeeded(flags, algorithm, encryptToBase64(storageCipher, ValueBuffers.get(), plain, length));
+    }
+
     private String decodeRawValue(String value) throws Exception {
         if (value == null) {
             return null;
         }
-        byte[] data = Base64.decode(value, 0);
-        byte[] result = storageCipher.decrypt(data);
+        return decryptRawValue(value, (plain, length, binary) -> binary ? toBase64(plain, length) : new String(plain, 0, length, charset));
+    }
+
+    /**
+     * Decrypts a value for EncryptedSharedPreferences, keeping whether it was written as bytes.
+     */
+    private String toEncryptedPreferencesValue(String value) throws Exception {
+        return decryptRawValue(value, (plain, length, binary) -> binary
+                ? EncryptedPreferencesValue.encodeBytes(toBase64(plain, length))
+                : EncryptedPreferencesValue.encodeString(new String(plain, 0, length, charset)));
+    }
+
+    /**
+     * Decrypts a value with the current storage algorithm, keeping whether it was written as bytes.
+     */
+    private String reEncryptRawValue(String value) throws Exception {
+        return decryptRawValue(value, (plain, length, binary) -> encryptRawValue(plain, length, binary ? StoredValue.FLAG_BINARY : 0));
+    }
+
+    private <T> T decryptRawValue(String value, PlainValueReader<T> reader) throws Exception {
+        final StoredValue storedValue = StoredValue.parse(value);
+        if (storedValue == null) {
+            return decryptFromBase64(getStorageCipher(StoredValue.NO_ALGORITHM), value, 0, reader);
+        }
+
+        final StorageCipher cipher = getStorageCipher(storedValue.algorithm);
+        if (storedValue.hasFlag(StoredValue.FLAG_FILE)) {
+            final byte[] decrypted = largeValues.read(cipher, storedValue.payload);
+            try {
+                return readPlainValue(decrypted, decrypted.length, storedValue.flags, reader);
+            } finally {
+                ValueBuffers.clear(decrypted, decrypted.length);
+            }
+        }
+        return decryptFromBase64(cipher, storedValue.payload, storedValue.flags, reader);
+    }
+
+    /**
+     * Passes a decrypted value to {@code reader}, inflating it first if it was stored compressed.
+     */
+    private static <T> T readPlainValue(byte[] decrypted, int length, int flags, PlainValueReader<T> reader) throws Exception {
+        final boolean binary = (flags & StoredValue.FLAG_BINARY) != 0;
+        if ((flags & StoredValue.FLAG_COMPRESSED) == 0) {
+            return reader.read(decrypted, length, binary);
+        }
+        final ValueBuffers buffers = ValueBuffers.get();
+        final int plainLength = ValueCompression.getInflatedLength(decrypted, length);
+        final byte[] plain = buffers.plain(plainLength);
+        try {
+            ValueCompression.inflate(buffers.inflater(), decrypted, length, plain, plainLength);
+            return reader.read(plain, plainLength, binary);
+        } finally {
+            ValueBuffers.clear(plain, plainLength);
+        }
+    }
+
+    private static String toBase64(byte[] bytes, int length) {
+        final char[] chars = ValueBuffers.get().chars(Base64Codec.getEncodedLength(length));
+        return new String(chars, 0, Base64Codec.encode(bytes, 0, length, chars));
+    }
+
+    /**
+     * Encrypts {@code length} plain bytes and Base64 encodes the result, working in the thread's
+     * buffers so only the returned string is allocated.
+     */
+    private static String encryptToBase64(StorageCipher cipher, ValueBuffers buffers, byte[] plain, int length) throws Exception {
+        final byte[] encrypted = buffers.encrypted(cipher.getMaxEncryptedSize(length));
+        final int encryptedLength = cipher.encrypt(plain, 0, length, encrypted, 0);
+        final char[] chars = buffers.chars(Base64Codec.getEncodedLength(encryptedLength));
+        return new String(chars, 0, Base64Codec.encode(encrypted, 0, encryptedLength, chars));
+    }
+
+    private <T> T decryptFromBase64(StorageCipher cipher, String encoded, int flags, PlainValueReader<T> reader) throws Exception {
+        final ValueBuffers buffers = ValueBuffers.get();
+        final int encodedLength = encoded.length();
+        final char[] chars = buffers.chars(encodedLength);
+        encoded.getChars(0, encodedLength, chars, 0);
+        byte[] encrypted = buffers.encrypted(Base64Codec.getMaxDecodedLength(encodedLength));
+        int encryptedLength = Base64Codec.decode(chars, encodedLength, encrypted);
+        if (encryptedLength < 0) {
+            // Leave unusual input to the platform decoder, which is more lenient.
+            encrypted = Base64.decode(encoded, 0);
+            encryptedLength = encrypted.length;
+        }
 
-        return new String(result, charset);
+        // Compressed values are inflated into the plain buffer afterwards.
+        final int maxLength = cipher.getMaxDecryptedSize(encryptedLength);
+        final byte[] decrypted = (flags & StoredValue.FLAG_COMPRESSED) != 0 ? buffers.deflated(maxLength) : buffers.plain(maxLength);
+        final int length = cipher.decrypt(encrypted, 0, encryptedLength, decrypted, 0);
+        try {
+            return readPlainValue(decrypted, length, flags, reader);
+        } finally {
+            ValueBuffers.clear(decrypted, length);
+        }
     }
 }
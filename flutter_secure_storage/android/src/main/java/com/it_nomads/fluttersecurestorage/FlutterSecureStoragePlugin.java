@@ -2,42 +2,68 @@ package com.it_nomads.fluttersecurestorage;
 
 import android.content.Context;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import com.it_nomads.fluttersecurestorage.ciphers.CipherPool;
+
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.StandardMethodCodec;
 
 public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlugin {
 
     private static final String TAG = "FlutterSecureStoragePl";
+    private static final String BULK_CHANNEL = "plugins.it_nomads.com/flutter_secure_storage/bulk";
+    private static int workerThreadCount = StorageExecutor.DEFAULT_THREAD_COUNT;
+    private BinaryMessenger messenger;
     private MethodChannel channel;
-    private FlutterSecureStorage secureStorage;
-    private HandlerThread workerThread;
-    private Handler workerThreadHandler;
+    private EventChannel eventChannel;
+    private StorageChangeEvents changeEvents;
+    // Null while detached. Tasks keep the core they were submitted to.
+    private StorageCore core;
+
+    /**
+     * Sets the number of worker threads, for example from Application.onCreate. The threads are
+     * shared by all Flutter engines and created when the first plugin instance attaches, so the
+     * count applies once no engine is attached. Reads of the same store run concurrently on them.
+     */
+    public static void setWorkerThreadCount(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Worker thread count must be at least 1");
+        }
+        workerThreadCount = count;
+    }
 
     public void initInstance(BinaryMessenger messenger, Context context) {
         try {
-            secureStorage = new FlutterSecureStorage(context);
-
-            workerThread = new HandlerThread("com.it_nomads.fluttersecurestorage.worker");
-            workerThread.start();
-            workerThreadHandler = new Handler(workerThread.getLooper());
+            core = StorageCore.acquire(context, workerThreadCount);
+            changeEvents = new StorageChangeEvents();
+            core.addChangeListener(changeEvents);
 
             channel = new MethodChannel(messenger, "plugins.it_nomads.com/flutter_secure_storage");
             channel.setMethodCallHandler(this);
+            eventChannel = new EventChannel(messenger, "plugins.it_nomads.com/flutter_secure_storage/events");
+            eventChannel.setStreamHandler(changeEvents);
+            // Method calls encoded like on the method channel, answered with BulkResponseCodec.
+            this.messenger = messenger;
+            messenger.setMessageHandler(BULK_CHANNEL, this::onBulkMessage);
         } catch (Exception e) {
             Log.e(TAG, "Registration failed", e);
         }
@@ -51,26 +77,165 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
         if (channel != null) {
-            workerThread.quitSafely();
-            workerThread = null;
+            // Other engines may still use the core; the last one to detach shuts it down.
+            core.removeChangeListener(changeEvents);
+            // Tasks still running keep scheduling through the core, which ignores them once shut down.
+            StorageCore.release(core);
+            core = null;
 
             channel.setMethodCallHandler(null);
             channel = null;
+            eventChannel.setStreamHandler(null);
+            eventChannel = null;
+            messenger.setMessageHandler(BULK_CHANNEL, null);
+            messenger = null;
         }
-        secureStorage = null;
     }
 
     @Override
     public void onMethodCall(@NonNull MethodCall call, @NonNull Result rawResult) {
+        final StorageCore core = this.core;
+        if (core == null) {
+            rawResult.error("Detached", "The plugin is not attached to an engine", null);
+            return;
+        }
+        if (handleMetricsCall(core, call, rawResult)) {
+            return;
+        }
         MethodResultWrapper result = new MethodResultWrapper(rawResult);
-        // Run all method calls inside the worker thread instead of the platform thread.
-        workerThreadHandler.post(new MethodRunner(call, result));
+        StorageOptions options = getOptionsFromCall(call);
+        if ("isReady".equals(call.method)) {
+            // Answered right away, without waiting for the initialization it reports on.
+            final FlutterSecureStorage secureStorage = core.registry.peek(options);
+            rawResult.success(secureStorage != null && secureStorage.isInitialized());
+            return;
+        }
+        // Run all method calls on the worker threads instead of the platform thread.
+        core.executor.execute(options.sharedPreferencesName, getAccess(call.method), new MethodRunner(core, call, options, result));
+    }
+
+    /**
+     * Runs a bulk method received on the bulk channel and answers it with a single buffer from
+     * {@link BulkResponseCodec}. Other methods are answered as not implemented.
+     */
+    private void onBulkMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply) {
+        final StorageCore core = this.core;
+        if (core == null) {
+            reply.reply(BulkResponseCodec.encodeError("Detached", "The plugin is not attached to an engine"));
+            return;
+        }
+        final MethodCall call;
+        try {
+            call = StandardMethodCodec.INSTANCE.decodeMethodCall(message);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Invalid bulk message", e);
+            reply.reply(null);
+            return;
+        }
+        if (!BulkResponseCodec.supports(call.method)) {
+            reply.reply(null);
+            return;
+        }
+        final StorageOptions options = getOptionsFromCall(call);
+        core.executor.execute(options.sharedPreferencesName, getAccess(call.method), new MethodRunner(core, call, options, new BulkResultWrapper(reply)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StorageOptions getOptionsFromCall(MethodCall call) {
+        Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+        return StorageOptions.fromMap(arguments != null ? (Map<String, Object>) arguments.get("options") : null);
+    }
+
+    /**
+     * Answers the metrics methods directly on the platform thread, they do not touch any store.
+     *
+     * @return false if {@code call} is not a metrics method.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean handleMetricsCall(StorageCore core, MethodCall call, Result result) {
+        switch (call.method) {
+            case "getMetrics": {
+                final Map<String, Object> snapshot = core.metrics.snapshot();
+                final Map<String, Object> executor = new HashMap<>();
+                executor.put("queueDepth", core.executor.getQueueDepth());
+                executor.put("completedCount", core.executor.getCompletedCount());
+                executor.put("averageWaitMicros", core.executor.getAverageWaitNanos() / 1000.0);
+                executor.put("maxWaitMicros", core.executor.getMaxWaitNanos() / 1000.0);
+                snapshot.put("executor", executor);
+                // Value cache hits and misses of the reads of each preferences file.
+                final Map<String, Object> caches = new HashMap<>();
+                for (FlutterSecureStorage secureStorage : core.registry.getStorages()) {
+                    final Map<String, Object> cache = new HashMap<>();
+                    cache.put("hitCount", secureStorage.getCacheHitCount());
+                    cache.put("missCount", secureStorage.getCacheMissCount());
+                    caches.put(secureStorage.options.sharedPreferencesName, cache);
+                }
+                snapshot.put("caches", caches);
+                // Cipher pool usage of each preferences file, summed over its storage ciphers.
+                final Map<String, Object> cipherPools = new HashMap<>();
+                for (FlutterSecureStorage secureStorage : core.registry.getStorages()) {
+                    long acquireCount = 0;
+                    long createCount = 0;
+                    int peakInUse = 0;
+                    for (CipherPool pool : secureStorage.getCipherPools()) {
+                        acquireCount += pool.getAcquireCount();
+                        createCount += pool.getCreateCount();
+                        peakInUse = Math.max(peakInUse, pool.getPeakInUse());
+                    }
+                    final Map<String, Object> cipherPool = new HashMap<>();
+                    cipherPool.put("acquireCount", acquireCount);
+                    cipherPool.put("createCount", createCount);
+                    cipherPool.put("peakInUse", peakInUse);
+                    cipherPools.put(secureStorage.options.sharedPreferencesName, cipherPool);
+                }
+                snapshot.put("cipherPools", cipherPools);
+                // Size and duration of the migration to EncryptedSharedPreferences of each file that
+                // had values to migrate.
+                final Map<String, Object> migrations = new HashMap<>();
+                for (FlutterSecureStorage secureStorage : core.registry.getStorages()) {
+                    if (secureStorage.getMigratedEntryCount() > 0) {
+                        final Map<String, Object> migration = new HashMap<>();
+                        migration.put("entryCount", secureStorage.getMigratedEntryCount());
+                        migration.put("durationMillis", secureStorage.getMigrationDurationMillis());
+                        migrations.put(secureStorage.options.sharedPreferencesName, migration);
+                    }
+                }
+                snapshot.put("migrations", migrations);
+                result.success(snapshot);
+                return true;
+            }
+            case "resetMetrics":
+                core.metrics.reset();
+                result.success(null);
+                return true;
+            case "setMetricsEnabled": {
+                final Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+                core.metrics.setEnabled(arguments != null && Boolean.TRUE.equals(arguments.get("enabled")));
+                result.success(null);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private static StorageExecutor.Access getAccess(String method) {
+        switch (method) {
+            case "read":
+            case "readBytes":
+            case "readAll":
+            case "keys":
+            case "containsKey":
+                return StorageExecutor.Access.READ;
+            default:
+                return StorageExecutor.Access.WRITE;
+        }
     }
 
     @SuppressWarnings("unchecked")
-    private String getKeyFromCall(MethodCall call) {
+    private String getKeyFromCall(StorageOptions options, MethodCall call) {
         Map<String, Object> arguments = (Map<String, Object>) call.arguments;
-        return addPrefixToKey((String) arguments.get("key"));
+        return addPrefixToKey(options, (String) arguments.get("key"));
     }
 
     @SuppressWarnings("unchecked")
@@ -79,8 +244,76 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
         return (String) arguments.get("value");
     }
 
-    private String addPrefixToKey(String key) {
-        return secureStorage.ELEMENT_PREFERENCES_KEY_PREFIX + "_" + key;
+    /**
+     * @return the optional "prefix" argument that limits readAll, keys and deleteAll to matching keys.
+     */
+    @SuppressWarnings("unchecked")
+    private String getPrefixFromCall(MethodCall call) {
+        Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+        return arguments != null ? (String) arguments.get("prefix") : null;
+    }
+
+    /**
+     * Reads the optional "durability" argument: "buffered", "apply" or "commit".
+     */
+    @SuppressWarnings("unchecked")
+    private FlutterSecureStorage.Durability getDurabilityFromCall(MethodCall call, FlutterSecureStorage.Durability defaultDurability) {
+        Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+        String durability = arguments != null ? (String) arguments.get("durability") : null;
+        if (durability == null) {
+            return defaultDurability;
+        }
+        switch (durability) {
+            case "buffered":
+                return FlutterSecureStorage.Durability.BUFFERED;
+            case "apply":
+                return FlutterSecureStorage.Durability.APPLY;
+            case "commit":
+                return FlutterSecureStorage.Durability.COMMIT;
+            default:
+                throw new IllegalArgumentException("Unknown durability: " + durability);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] getBytesFromCall(MethodCall call) {
+        Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+        return (byte[]) arguments.get("value");
+    }
+
+    /**
+     * Reads the ordered "operations" argument of a batch call. Each operation is a map with a
+     * "type" of "write" or "delete", a "key" and, for writes, a "value".
+     */
+    @SuppressWarnings("unchecked")
+    private List<BatchOperation> getBatchOperationsFromCall(StorageOptions options, MethodCall call) {
+        Map<String, Object> arguments = (Map<String, Object>) call.arguments;
+        List<Map<String, Object>> rawOperations = (List<Map<String, Object>>) arguments.get("operations");
+        if (rawOperations == null) {
+            throw new IllegalArgumentException("Missing operations");
+        }
+
+        List<BatchOperation> operations = new ArrayList<>(rawOperations.size());
+        for (Map<String, Object> rawOperation : rawOperations) {
+            String type = (String) rawOperation.get("type");
+            String key = addPrefixToKey(options, (String) rawOperation.get("key"));
+            if ("write".equals(type)) {
+                String value = (String) rawOperation.get("value");
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for key " + rawOperation.get("key"));
+                }
+                operations.add(BatchOperation.write(key, value));
+            } else if ("delete".equals(type)) {
+                operations.add(BatchOperation.delete(key));
+            } else {
+                throw new IllegalArgumentException("Unknown batch operation type: " + type);
+            }
+        }
+        return operations;
+    }
+
+    private String addPrefixToKey(StorageOptions options, String key) {
+        return options.preferencesKeyPrefix + "_" + key;
     }
 
     /**
@@ -112,31 +345,102 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
     }
 
     /**
-     * Wraps the functionality of onMethodCall() in a Runnable for execution in the worker thread.
+     * Result of a bulk channel call. Encodes on the worker thread and replies with one post to the
+     * platform thread.
+     */
+    static class BulkResultWrapper implements Result {
+
+        private final BinaryMessenger.BinaryReply reply;
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        BulkResultWrapper(BinaryMessenger.BinaryReply reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public void success(final Object result) {
+            ByteBuffer encoded;
+            try {
+                encoded = BulkResponseCodec.encodeSuccess(result);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Encoding bulk result failed", e);
+                encoded = BulkResponseCodec.encodeError("Unsupported result", e.getMessage());
+            }
+            final ByteBuffer response = encoded;
+            handler.post(() -> reply.reply(response));
+        }
+
+        @Override
+        public void error(@NonNull final String errorCode, final String errorMessage, final Object errorDetails) {
+            final ByteBuffer response = BulkResponseCodec.encodeError(errorCode, errorMessage);
+            handler.post(() -> reply.reply(response));
+        }
+
+        @Override
+        public void notImplemented() {
+            handler.post(() -> reply.reply(null));
+        }
+    }
+
+    /**
+     * Wraps the functionality of onMethodCall() in a task for execution on a worker thread.
      */
     class MethodRunner implements Runnable {
+        private final StorageCore core;
         private final MethodCall call;
+        private final StorageOptions options;
         private final Result result;
+        private final long submittedAt;
 
-        MethodRunner(MethodCall call, Result result) {
+        MethodRunner(StorageCore core, MethodCall call, StorageOptions options, Result result) {
+            this.core = core;
             this.call = call;
+            this.options = options;
             this.result = result;
+            this.submittedAt = core.metrics.start();
         }
 
-        @SuppressWarnings("unchecked")
         @Override
         public void run() {
-            boolean resetOnError = false;
+            final long start = core.metrics.begin(call.method, submittedAt);
+            boolean failed = true;
+            try {
+                failed = !runMethod();
+            } finally {
+                core.metrics.end(start, failed);
+            }
+        }
+
+        /**
+         * @return false if the call failed with an exception.
+         */
+        private boolean runMethod() {
+            core.prewarmer.update(options);
+            final FlutterSecureStorage secureStorage;
+            try {
+                secureStorage = core.registry.get(options);
+            } catch (IllegalArgumentException e) {
+                result.error("Conflicting options", e.getMessage(), null);
+                return false;
+            }
+            final FlutterSecureStorage.Durability durability;
+            try {
+                // Flushing defaults to a commit, everything else to apply as before.
+                durability = getDurabilityFromCall(call, "flush".equals(call.method)
+                        ? FlutterSecureStorage.Durability.COMMIT
+                        : FlutterSecureStorage.Durability.APPLY);
+            } catch (IllegalArgumentException | ClassCastException e) {
+                result.error("Invalid durability", e.getMessage(), null);
+                return false;
+            }
             try {
-                secureStorage.options = (Map<String, Object>) ((Map<String, Object>) call.arguments).get("options");
-                resetOnError = secureStorage.getResetOnError();
                 switch (call.method) {
                     case "write": {
-                        String key = getKeyFromCall(call);
+                        String key = getKeyFromCall(options, call);
                         String value = getValueFromCall(call);
 
                         if (value != null) {
-                            secureStorage.write(key, value);
+                            secureStorage.write(key, value, durability);
                             result.success(null);
                         } else {
                             result.error("null", null, null);
@@ -144,36 +448,75 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
                         break;
                     }
                     case "read": {
-                        String key = getKeyFromCall(call);
+                        String key = getKeyFromCall(options, call);
 
-                        if (secureStorage.containsKey(key)) {
-                            String value = secureStorage.read(key);
-                            result.success(value);
-                        } else {
+                        result.success(secureStorage.read(key));
+                        break;
+                    }
+                    case "writeBytes": {
+                        String key = getKeyFromCall(options, call);
+                        byte[] value = getBytesFromCall(call);
+
+                        if (value != null) {
+                            secureStorage.writeBytes(key, value, durability);
                             result.success(null);
+                        } else {
+                            result.error("null", null, null);
                         }
                         break;
                     }
+                    case "readBytes": {
+                        String key = getKeyFromCall(options, call);
+
+                        result.success(secureStorage.readBytes(key));
+                        break;
+                    }
                     case "readAll": {
-                        result.success(secureStorage.readAll());
+                        result.success(secureStorage.readAll(options.preferencesKeyPrefix, getPrefixFromCall(call)));
+                        break;
+                    }
+                    case "keys": {
+                        result.success(secureStorage.keys(options.preferencesKeyPrefix, getPrefixFromCall(call)));
                         break;
                     }
                     case "containsKey": {
-                        String key = getKeyFromCall(call);
+                        String key = getKeyFromCall(options, call);
 
                         boolean containsKey = secureStorage.containsKey(key);
                         result.success(containsKey);
                         break;
                     }
                     case "delete": {
-                        String key = getKeyFromCall(call);
+                        String key = getKeyFromCall(options, call);
 
-                        secureStorage.delete(key);
+                        secureStorage.delete(key, durability);
+                        result.success(null);
+                        break;
+                    }
+                    case "batch": {
+                        List<BatchOperation> operations;
+                        try {
+                            operations = getBatchOperationsFromCall(options, call);
+                        } catch (IllegalArgumentException | ClassCastException e) {
+                            result.error("Invalid batch", e.getMessage(), null);
+                            break;
+                        }
+                        result.success(secureStorage.batch(operations, durability));
+                        break;
+                    }
+                    case "flush": {
+                        secureStorage.flush(durability);
                         result.success(null);
                         break;
                     }
                     case "deleteAll": {
-                        secureStorage.deleteAll();
+                        String prefix = getPrefixFromCall(call);
+
+                        if (prefix != null) {
+                            secureStorage.deleteAll(options.preferencesKeyPrefix, prefix);
+                        } else {
+                            secureStorage.deleteAll();
+                        }
                         result.success(null);
                         break;
                     }
@@ -181,16 +524,24 @@ public class FlutterSecureStoragePlugin implements MethodCallHandler, FlutterPlu
                         result.notImplemented();
                         break;
                 }
+                core.scheduleReEncryption(secureStorage);
+                core.scheduleFlush(secureStorage);
+                return true;
             } catch (FileNotFoundException e) {
                 Log.i("Creating sharedPrefs", e.getLocalizedMessage());
+                return false;
             } catch (Exception e) {
-                if (resetOnError) {
-                    try {
-                        secureStorage.deleteAll();
-                        result.success("Data has been reset");
-                    } catch (Exception ex) {
-                        throw new RuntimeException(ex);
-                    }
+                if (options.resetOnError) {
+                    // Resetting needs exclusive access, reads only hold the shared lock here.
+                    core.executor.execute(options.sharedPreferencesName, StorageExecutor.Access.WRITE, () -> {
+                        try {
+                            secureStorage.deleteAll();
+                            result.success("Data has been reset");
+                        } catch (Exception ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    });
+                    return false;
                 } else {
                     throw new RuntimeException(e);
                 }
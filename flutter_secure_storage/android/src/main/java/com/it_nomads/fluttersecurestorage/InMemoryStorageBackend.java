@@ -0,0 +1,112 @@
+package com.it_nomads.fluttersecurestorage;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link StorageBackend} kept in memory, so the storage logic and ciphers can run on a plain JVM,
+ * for example in tests and benchmarks. Nothing is written to disk, durable commits included.
+ * <p>
+ * Reads run concurrently; a commit holds the write lock while it applies its changes, so reads
+ * never see part of a batch.
+ */
+class InMemoryStorageBackend implements StorageBackend {
+
+    private final Map<String, String> values = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Nullable
+    @Override
+    public String get(String key) {
+        lock.readLock().lock();
+        try {
+            return values.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        lock.readLock().lock();
+        try {
+            return values.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, String> getAll() {
+        lock.readLock().lock();
+        try {
+            return new HashMap<>(values);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Batch edit() {
+        return new InMemoryBatch();
+    }
+
+    private class InMemoryBatch implements Batch {
+        // Changes in call order, a null value removes the key.
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> changes = new ArrayList<>();
+        private boolean clear;
+
+        @Override
+        public synchronized Batch put(String key, String value) {
+            if (value == null) {
+                return remove(key);
+            }
+            keys.add(key);
+            changes.add(value);
+            return this;
+        }
+
+        @Override
+        public synchronized Batch remove(String key) {
+            keys.add(key);
+            changes.add(null);
+            return this;
+        }
+
+        @Override
+        public synchronized Batch clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public synchronized boolean commit(boolean durable) {
+            lock.writeLock().lock();
+            try {
+                if (clear) {
+                    values.clear();
+                }
+                for (int i = 0; i < keys.size(); i++) {
+                    if (changes.get(i) != null) {
+                        values.put(keys.get(i), changes.get(i));
+                    } else {
+                        values.remove(keys.get(i));
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            keys.clear();
+            changes.clear();
+            clear = false;
+            return true;
+        }
+    }
+}
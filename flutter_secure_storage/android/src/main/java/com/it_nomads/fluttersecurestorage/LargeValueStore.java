@@ -0,0 +1,246 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.it_nomads.fluttersecurestorage.ciphers.StorageCipher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores values that are too large for SharedPreferences in separate files under the app's private
+ * storage. Only the file name is kept in the preferences.
+ * <p>
+ * A file is a header, holding the length of the value, followed by independently encrypted chunks,
+ * each stored as its length and the ciphertext. Values are encrypted straight from the caller's
+ * buffer and decrypted into a single array of the recorded length. Every chunk starts with its
+ * index and a last-chunk flag inside the ciphertext, so reordered or truncated files are detected
+ * when the storage cipher authenticates its input.
+ */
+class LargeValueStore {
+
+    private static final String TAG = "LargeValueStore";
+    private static final String DIRECTORY_NAME = "flutter_secure_storage";
+    private static final int MAGIC = 0x46535332; // "FSS2"
+    // Files without the value length in the header, still read.
+    private static final int MAGIC_WITHOUT_LENGTH = 0x46535331; // "FSS1"
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNK_HEADER_SIZE = 5;
+    private static final int MAX_CIPHERTEXT_CHUNK_SIZE = CHUNK_SIZE + 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    LargeValueStore(Context context, String sharedPreferencesName) {
+        directory = new File(getRootDirectory(context), sharedPreferencesName);
+    }
+
+    /**
+     * Directory for storage files kept outside SharedPreferences.
+     */
+    static File getRootDirectory(Context context) {
+        // Keys are bound to this device, so backing the files up would only restore unreadable data.
+        final File root = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? context.getNoBackupFilesDir() : context.getFilesDir();
+        return new File(root, DIRECTORY_NAME);
+    }
+
+    /**
+     * Encrypts the first {@code length} bytes of {@code value} chunk by chunk into a new file.
+     *
+     * @return the name of the file, to be stored in place of the value.
+     */
+    String write(StorageCipher cipher, byte[] value, int length) throws Exception {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        final String name = UUID.randomUUID().toString();
+        final File temp = new File(directory, name + TEMP_SUFFIX);
+
+        try (FileOutputStream stream = new FileOutputStream(temp); FileChannel channel = stream.getChannel()) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(length).flip();
+            writeFully(channel, header);
+
+            // Both buffers are reused for every chunk; each record is its length followed by the ciphertext.
+            final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_SIZE + Math.min(CHUNK_SIZE, length));
+            final ByteBuffer record = ByteBuffer.allocate(4 + cipher.getMaxEncryptedSize(chunk.capacity()));
+            int offset = 0;
+            int index = 0;
+            try {
+                do {
+                    final int size = Math.min(CHUNK_SIZE, length - offset);
+                    final boolean last = offset + size == length;
+                    chunk.clear();
+                    chunk.putInt(index).put((byte) (last ? 1 : 0)).put(value, offset, size).flip();
+
+                    record.clear();
+                    record.position(4);
+                    final int encryptedLength = cipher.encrypt(chunk, record);
+                    record.putInt(0, encryptedLength).flip();
+                    writeFully(channel, record);
+
+                    offset += size;
+                    index++;
+                } while (offset < length);
+            } finally {
+                Arrays.fill(chunk.array(), (byte) 0);
+            }
+            channel.force(true);
+        } catch (Exception e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+
+        if (!temp.renameTo(new File(directory, name))) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Could not store value file " + name);
+        }
+        return name;
+    }
+
+    byte[] read(StorageCipher cipher, String name) throws Exception {
+        final File file = new File(directory, name);
+        if (!file.isFile()) {
+            throw new IOException("Missing value file " + name);
+        }
+
+        try (FileInputStream stream = new FileInputStream(file); FileChannel channel = stream.getChannel()) {
+            final long fileSize = channel.size();
+            final ByteBuffer magic = ByteBuffer.allocate(4);
+            readFully(channel, magic);
+            // The value is smaller than its file, which also bounds a corrupt length.
+            final byte[] output;
+            final boolean exactLength;
+            if (magic.getInt(0) == MAGIC) {
+                final ByteBuffer valueLength = ByteBuffer.allocate(4);
+                readFully(channel, valueLength);
+                final int size = valueLength.getInt(0);
+                if (size < 0 || size > fileSize) {
+                    throw new IOException("Corrupt value file " + name);
+                }
+                output = new byte[size];
+                exactLength = true;
+            } else if (magic.getInt(0) == MAGIC_WITHOUT_LENGTH) {
+                output = new byte[(int) Math.min(fileSize, Integer.MAX_VALUE)];
+                exactLength = false;
+            } else {
+                throw new IOException("Unknown value file format " + name);
+            }
+
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            // Sized for the largest chunk and reused for every one.
+            final ByteBuffer encrypted = ByteBuffer.allocate(MAX_CIPHERTEXT_CHUNK_SIZE);
+            final ByteBuffer plain = ByteBuffer.allocate(cipher.getMaxDecryptedSize(MAX_CIPHERTEXT_CHUNK_SIZE));
+            int index = 0;
+            int offset = 0;
+            boolean last = false;
+            try {
+                while (!last) {
+                    length.clear();
+                    readFully(channel, length);
+                    final int size = length.getInt(0);
+                    if (size <= 0 || size > MAX_CIPHERTEXT_CHUNK_SIZE) {
+                        throw new IOException("Corrupt value file " + name);
+                    }
+                    encrypted.clear();
+                    encrypted.limit(size);
+                    readFully(channel, encrypted);
+                    encrypted.flip();
+
+                    plain.clear();
+                    cipher.decrypt(encrypted, plain);
+                    plain.flip();
+                    if (plain.remaining() < CHUNK_HEADER_SIZE || plain.getInt() != index) {
+                        throw new IOException("Corrupt value file " + name);
+                    }
+                    last = plain.get() == 1;
+                    final int chunkLength = plain.remaining();
+                    if (chunkLength > output.length - offset) {
+                        throw new IOException("Corrupt value file " + name);
+                    }
+                    plain.get(output, offset, chunkLength);
+                    offset += chunkLength;
+                    index++;
+                }
+            } catch (Exception e) {
+                Arrays.fill(output, (byte) 0);
+                throw e;
+            } finally {
+                Arrays.fill(plain.array(), (byte) 0);
+            }
+            if (exactLength) {
+                if (offset != output.length) {
+                    Arrays.fill(output, (byte) 0);
+                    throw new IOException("Corrupt value file " + name);
+                }
+                return output;
+            }
+            final byte[] value = Arrays.copyOf(output, offset);
+            Arrays.fill(output, (byte) 0);
+            return value;
+        }
+    }
+
+    void delete(String name) {
+        final File file = new File(directory, name);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete value file " + name);
+        }
+    }
+
+    void deleteAll() {
+        deleteUnreferenced(null);
+    }
+
+    /**
+     * @return whether any value file exists, referenced or not.
+     */
+    boolean hasFiles() {
+        final String[] names = directory.list();
+        return names != null && names.length > 0;
+    }
+
+    /**
+     * Deletes files that are not in {@code referenced}, left behind when the process died between
+     * writing a file and committing the preferences. A null set deletes every file.
+     */
+    void deleteUnreferenced(Set<String> referenced) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (referenced == null || !referenced.contains(file.getName())) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Could not delete value file " + file.getName());
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of value file");
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * {@link StorageBackend} on an append-only log instead of an XML file that is rewritten on every
+ * change. Values handed to it are already encrypted by {@link FlutterSecureStorage}.
+ * <p>
+ * Every commit appends one record holding all changes of the batch, so writes cost the size of
+ * the change rather than the size of the store. A record is its CRC32, its length and its
+ * operations. On load, records are replayed into an in-memory index; a torn or corrupted tail
+ * left by a crash fails its CRC check and is truncated. A record whose append fails while the
+ * process keeps running is cut off right away. Once stale records outnumber live
+ * entries the log is compacted in the background into a single record.
+ */
+class LogStorageBackend implements StorageBackend {
+
+    private static final String TAG = "LogStorageBackend";
+    private static final int MAGIC = 0x46534c31; // "FSL1"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final int COMPACTION_MIN_STALE_RECORDS = 64;
+    private static final float COMPACTION_STALE_RATIO = 1.0f;
+
+    private static final Map<String, LogStorageBackend> instances = new HashMap<>();
+    private static ExecutorService compactionExecutor;
+
+    private final File file;
+    private final Charset charset;
+    private final Map<String, String> entries = new HashMap<>();
+    private FileChannel channel;
+    private int recordCount;
+    private boolean compactionScheduled;
+    private boolean closed;
+
+    /**
+     * Returns the log for {@code name}. There is a single instance per file in the process, so that
+     * different storage configurations never append to the same log concurrently.
+     */
+    static synchronized LogStorageBackend get(Context context, String name, Charset charset) throws IOException {
+        final File file = getFile(context, name);
+        LogStorageBackend log = instances.get(file.getPath());
+        if (log == null) {
+            log = new LogStorageBackend(file, charset);
+            instances.put(file.getPath(), log);
+        }
+        return log;
+    }
+
+    /**
+     * @return the file of the log for {@code name}, without creating it.
+     */
+    static File getFile(Context context, String name) {
+        return new File(LargeValueStore.getRootDirectory(context), name + ".log");
+    }
+
+    LogStorageBackend(File file, Charset charset) throws IOException {
+        this.file = file;
+        this.charset = charset;
+        final File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        load();
+    }
+
+    private void load() throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        final long size = channel.size();
+        if (size < HEADER_SIZE) {
+            channel.truncate(0);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).flip();
+            writeFully(header);
+            channel.force(true);
+            return;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        channel.position(0);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Read the whole log.
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Unknown log format " + file);
+        }
+
+        int validEnd = buffer.position();
+        final CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            final int checksum = buffer.getInt();
+            final int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            final ByteBuffer record = ByteBuffer.wrap(buffer.array(), buffer.position(), length).slice();
+            buffer.position(buffer.position() + length);
+            try {
+                replay(record);
+            } catch (BufferUnderflowException e) {
+                break;
+            }
+            validEnd = buffer.position();
+        }
+
+        if (validEnd < size) {
+            Log.w(TAG, "Discarding " + (size - validEnd) + " bytes of incomplete log in " + file.getName());
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        channel.position(validEnd);
+    }
+
+    private void replay(ByteBuffer record) {
+        final int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            final byte op = record.get();
+            if (op == OP_CLEAR) {
+                entries.clear();
+            } else {
+                final String key = readString(record);
+                if (op == OP_PUT) {
+                    entries.put(key, readString(record));
+                } else {
+                    entries.remove(key);
+                }
+            }
+            recordCount++;
+        }
+    }
+
+    private String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, charset);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll() {
+        return new HashMap<>(entries);
+    }
+
+    @Nullable
+    @Override
+    public synchronized String get(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Batch edit() {
+        return new LogBatch();
+    }
+
+    /**
+     * Closes the log and deletes its file, once its entries were moved to another backend.
+     */
+    void delete() throws IOException {
+        synchronized (LogStorageBackend.class) {
+            instances.remove(file.getPath());
+        }
+        synchronized (this) {
+            close();
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Could not delete " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Closes the file, later commits fail.
+     */
+    synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Appends the changes as one record and applies them to the index.
+     */
+    private synchronized boolean write(boolean clear, Map<String, String> changes, boolean durable) {
+        long previousEnd = -1;
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream payload = new DataOutputStream(bytes);
+            payload.writeInt(changes.size() + (clear ? 1 : 0));
+            if (clear) {
+                payload.writeByte(OP_CLEAR);
+            }
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                payload.writeByte(change.getValue() != null ? OP_PUT : OP_REMOVE);
+                writeString(payload, change.getKey());
+                if (change.getValue() != null) {
+                    writeString(payload, change.getValue());
+                }
+            }
+            payload.flush();
+            final byte[] data = bytes.toByteArray();
+
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+            record.putInt((int) crc.getValue()).putInt(data.length).put(data).flip();
+            previousEnd = channel.position();
+            append(record);
+            if (durable) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to " + file.getName(), e);
+            if (previousEnd >= 0) {
+                rollBack(previousEnd);
+            }
+            return false;
+        }
+
+        if (clear) {
+            entries.clear();
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                entries.put(change.getKey(), change.getValue());
+            } else {
+                entries.remove(change.getKey());
+            }
+        }
+        recordCount += changes.size() + (clear ? 1 : 0);
+        scheduleCompactionIfNeeded();
+        return true;
+    }
+
+    /**
+     * Writes a record at the end of the log. Overridden in tests to fail partway.
+     */
+    void append(ByteBuffer record) throws IOException {
+        writeFully(record);
+    }
+
+    /**
+     * Cuts a failed record off the log, so later records are not appended behind it and dropped with
+     * it on the next load. If that fails too, the log is closed and later commits fail.
+     */
+    private void rollBack(long end) {
+        try {
+            channel.truncate(end);
+            channel.position(end);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not remove a failed record from " + file.getName() + ", closing it", e);
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                Log.e(TAG, "Could not close " + file.getName(), closeError);
+            }
+        }
+    }
+
+    private void writeString(DataOutputStream output, String value) throws IOException {
+        final byte[] bytes = value.getBytes(charset);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        final int stale = recordCount - entries.size();
+        if (compactionScheduled || stale < COMPACTION_MIN_STALE_RECORDS || stale < entries.size() * COMPACTION_STALE_RATIO) {
+            return;
+        }
+        compactionScheduled = true;
+        getCompactionExecutor().execute(this::compact);
+    }
+
+    private static synchronized ExecutorService getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "com.it_nomads.fluttersecurestorage.compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compactionExecutor;
+    }
+
+    /**
+     * Rewrites the log as a single record of the live entries, then swaps it in atomically.
+     */
+    synchronized void compact() {
+        compactionScheduled = false;
+        if (closed) {
+            return;
+        }
+        final File temp = new File(file.getPath() + ".compact");
+        try {
+            try (RandomAccessFile output = new RandomAccessFile(temp, "rw"); FileChannel tempChannel = output.getChannel()) {
+                tempChannel.truncate(0);
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream payload = new DataOutputStream(bytes);
+                payload.writeInt(entries.size());
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    payload.writeByte(OP_PUT);
+                    writeString(payload, entry.getKey());
+                    writeString(payload, entry.getValue());
+                }
+                payload.flush();
+                final byte[] data = bytes.toByteArray();
+                final CRC32 crc = new CRC32();
+                crc.update(data, 0, data.length);
+
+                final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + RECORD_HEADER_SIZE + data.length);
+                buffer.putInt(MAGIC).putInt((int) crc.getValue()).putInt(data.length).put(data).flip();
+                while (buffer.hasRemaining()) {
+                    tempChannel.write(buffer);
+                }
+                tempChannel.force(true);
+            }
+
+            channel.close();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file.getName());
+            }
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.position(channel.size());
+            recordCount = entries.size();
+        } catch (IOException e) {
+            Log.e(TAG, "Compaction of " + file.getName() + " failed", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            try {
+                if (!channel.isOpen()) {
+                    channel = new RandomAccessFile(file, "rw").getChannel();
+                    channel.position(channel.size());
+                }
+            } catch (IOException reopenError) {
+                Log.e(TAG, "Could not reopen " + file.getName(), reopenError);
+            }
+        }
+    }
+
+    private class LogBatch implements Batch {
+        // A null value marks a removal, insertion order is kept so later changes win.
+        private final Map<String, String> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        @Override
+        public synchronized Batch put(String key, @Nullable String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Batch remove(String key) {
+            changes.put(key, null);
+            return this;
+        }
+
+        @Override
+        public synchronized Batch clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public synchronized boolean commit(boolean durable) {
+            // Without durable, the record reaches the OS right away and is flushed lazily.
+            return write(clear, changes, durable);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a per-value transformation (Base64 + cipher) to many entries at once.
+ * Small maps are processed on the calling thread, larger ones are split across a small bounded
+ * pool. Every entry is transformed independently, so the result is identical to a sequential run.
+ */
+final class ParallelValueCodec {
+
+    /**
+     * Below this number of entries the cost of handing work to other threads outweighs the gain.
+     */
+    static final int PARALLEL_THRESHOLD = 64;
+
+    private static final int POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor executor;
+
+    @FunctionalInterface
+    interface ValueFunction {
+        String apply(String value) throws Exception;
+    }
+
+    private ParallelValueCodec() {
+    }
+
+    static Map<String, String> transform(Map<String, String> input, ValueFunction function) throws Exception {
+        if (input.size() < PARALLEL_THRESHOLD || POOL_SIZE == 1) {
+            return transformSequentially(input, function);
+        }
+
+        // The calling thread works on the first slice while the pool handles the others.
+        final List<Map<String, String>> slices = split(input, POOL_SIZE + 1);
+        final List<Future<Map<String, String>>> futures = new ArrayList<>(slices.size() - 1);
+        final ThreadPoolExecutor pool = getExecutor();
+        for (int i = 1; i < slices.size(); i++) {
+            final Map<String, String> slice = slices.get(i);
+            futures.add(pool.submit((Callable<Map<String, String>>) () -> transformSequentially(slice, function)));
+        }
+
+        final Map<String, String> output = new HashMap<>(input.size() * 4 / 3 + 1);
+        try {
+            output.putAll(transformSequentially(slices.get(0), function));
+            for (Future<Map<String, String>> future : futures) {
+                output.putAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            for (Future<Map<String, String>> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return output;
+    }
+
+    private static Map<String, String> transformSequentially(Map<String, String> input, ValueFunction function) throws Exception {
+        final Map<String, String> output = new HashMap<>(input.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String> entry : input.entrySet()) {
+            output.put(entry.getKey(), function.apply(entry.getValue()));
+        }
+        return output;
+    }
+
+    private static List<Map<String, String>> split(Map<String, String> input, int count) {
+        final List<Map<String, String>> slices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            slices.add(new HashMap<>());
+        }
+        int index = 0;
+        for (Map.Entry<String, String> entry : input.entrySet()) {
+            slices.get(index++ % count).put(entry.getKey(), entry.getValue());
+        }
+        return slices;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            final ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "com.it_nomads.fluttersecurestorage.codec-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory);
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
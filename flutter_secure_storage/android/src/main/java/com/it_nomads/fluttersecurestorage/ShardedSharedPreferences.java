@@ -0,0 +1,304 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SharedPreferences spread over several preference files, so each write rewrites only the file
+ * holding the changed key. Value keys go to the shard picked by their hash, whatever the key prefix
+ * of the configuration writing them; the plugin's own markers, whose keys start with
+ * {@link #RESERVED_KEY_PREFIX}, stay in shard 0, which is the original file.
+ * <p>
+ * The shard count is a property of the store and is stored in shard 0. Opening a store with a different count, including a
+ * single file, moves the entries into their new shards first. Entries are written to their new
+ * shard before they are removed from the old one, so an interrupted move is repeated on the next
+ * open without losing values.
+ * <p>
+ * An editor touching several shards commits each shard separately, so such a change is not atomic
+ * across shards if the process dies in between.
+ */
+class ShardedSharedPreferences implements SharedPreferences {
+
+    private static final String TAG = "ShardedPreferences";
+    static final String SHARD_COUNT_KEY = "FlutterSecureShardCount";
+    private static final String SHARD_SUFFIX = "_shard";
+    static final String RESERVED_KEY_PREFIX = "FlutterSecure";
+
+    private final SharedPreferences[] shards;
+
+    private ShardedSharedPreferences(SharedPreferences[] shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Opens the store {@code name} with {@code shardCount} shards, moving entries if it was last
+     * opened with another count.
+     *
+     * @return the plain preferences file if {@code shardCount} is 1 or less.
+     */
+    static SharedPreferences open(Context context, String name, int shardCount) {
+        final int count = Math.max(1, shardCount);
+        final SharedPreferences base = context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        final int storedCount = base.getInt(SHARD_COUNT_KEY, 1);
+        if (storedCount != count) {
+            final SharedPreferences[] shards = openShards(context, name, base, Math.max(storedCount, count));
+            if (!reshard(shards, storedCount, count)) {
+                // Reading through the old layout still finds every value.
+                Log.e(TAG, "Moving " + name + " to " + count + " shards failed, keeping " + storedCount);
+                return storedCount > 1 ? new ShardedSharedPreferences(openShards(context, name, base, storedCount)) : base;
+            }
+        }
+        return count > 1 ? new ShardedSharedPreferences(openShards(context, name, base, count)) : base;
+    }
+
+    private static SharedPreferences[] openShards(Context context, String name, SharedPreferences base, int count) {
+        final SharedPreferences[] shards = new SharedPreferences[count];
+        shards[0] = base;
+        for (int i = 1; i < count; i++) {
+            shards[i] = context.getSharedPreferences(name + SHARD_SUFFIX + i, Context.MODE_PRIVATE);
+        }
+        return shards;
+    }
+
+    /**
+     * Moves every value entry in {@code shards} from its shard for {@code storedCount} to its
+     * shard for {@code count}, then records the new count.
+     */
+    private static boolean reshard(SharedPreferences[] shards, int storedCount, int count) {
+        // An interrupted move can leave a second copy of an entry in another shard. The copy in the
+        // shard of the stored layout is the current one; the others only count for entries that
+        // were already removed from there.
+        final Map<String, String> entries = new HashMap<>();
+        final Map<String, String> current = new HashMap<>();
+        final boolean[] misplaced = new boolean[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            for (Map.Entry<String, ?> entry : shards[i].getAll().entrySet()) {
+                if (entry.getValue() instanceof String && isSharded(entry.getKey())) {
+                    final String key = entry.getKey();
+                    (getShardIndex(key, storedCount) == i ? current : entries).put(key, (String) entry.getValue());
+                    if (getShardIndex(key, count) != i) {
+                        misplaced[i] = true;
+                    }
+                }
+            }
+        }
+        entries.putAll(current);
+
+        final Editor[] targets = new Editor[count];
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            final int index = getShardIndex(entry.getKey(), count);
+            if (targets[index] == null) {
+                targets[index] = shards[index].edit();
+            }
+            targets[index].putString(entry.getKey(), entry.getValue());
+        }
+        for (Editor target : targets) {
+            if (target != null && !target.commit()) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < shards.length; i++) {
+            if (!misplaced[i]) {
+                continue;
+            }
+            final Editor source = shards[i].edit();
+            for (String key : shards[i].getAll().keySet()) {
+                if (isSharded(key) && getShardIndex(key, count) != i) {
+                    source.remove(key);
+                }
+            }
+            if (!source.commit()) {
+                return false;
+            }
+        }
+
+        final Editor base = shards[0].edit();
+        if (count > 1) {
+            base.putInt(SHARD_COUNT_KEY, count);
+        } else {
+            base.remove(SHARD_COUNT_KEY);
+        }
+        return base.commit();
+    }
+
+    private static int getShardIndex(String key, int count) {
+        // String.hashCode is specified, so keys map to the same shard on every device and release.
+        return (key.hashCode() & Integer.MAX_VALUE) % count;
+    }
+
+    private static boolean isSharded(String key) {
+        return !key.startsWith(RESERVED_KEY_PREFIX);
+    }
+
+    private SharedPreferences getShard(String key) {
+        return isSharded(key) ? shards[getShardIndex(key, shards.length)] : shards[0];
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        final Map<String, Object> all = new HashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            for (Map.Entry<String, ?> entry : shards[i].getAll().entrySet()) {
+                // Only the owning shard counts, leftovers of an interrupted move are ignored.
+                if (!isSharded(entry.getKey()) || getShardIndex(entry.getKey(), shards.length) == i) {
+                    all.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return all;
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        return getShard(key).getString(key, defValue);
+    }
+
+    @Nullable
+    @Override
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        return getShard(key).getStringSet(key, defValues);
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        return getShard(key).getInt(key, defValue);
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        return getShard(key).getLong(key, defValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        return getShard(key).getFloat(key, defValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        return getShard(key).getBoolean(key, defValue);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return getShard(key).contains(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new ShardedEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        for (SharedPreferences shard : shards) {
+            shard.registerOnSharedPreferenceChangeListener(listener);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        for (SharedPreferences shard : shards) {
+            shard.unregisterOnSharedPreferenceChangeListener(listener);
+        }
+    }
+
+    /**
+     * Hands every change to an editor of the key's shard, created when the shard is first touched.
+     */
+    private class ShardedEditor implements Editor {
+        private final Editor[] editors = new Editor[shards.length];
+
+        private Editor getEditor(int index) {
+            if (editors[index] == null) {
+                editors[index] = shards[index].edit();
+            }
+            return editors[index];
+        }
+
+        private Editor getEditor(String key) {
+            return getEditor(isSharded(key) ? getShardIndex(key, shards.length) : 0);
+        }
+
+        @Override
+        public synchronized Editor putString(String key, @Nullable String value) {
+            getEditor(key).putString(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putStringSet(String key, @Nullable Set<String> values) {
+            getEditor(key).putStringSet(key, values);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putInt(String key, int value) {
+            getEditor(key).putInt(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putLong(String key, long value) {
+            getEditor(key).putLong(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putFloat(String key, float value) {
+            getEditor(key).putFloat(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putBoolean(String key, boolean value) {
+            getEditor(key).putBoolean(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            getEditor(key).remove(key);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor clear() {
+            for (int i = 0; i < shards.length; i++) {
+                getEditor(i).clear();
+            }
+            // Clearing applies before the other changes, so the layout stays recorded.
+            getEditor(0).putInt(SHARD_COUNT_KEY, shards.length);
+            return this;
+        }
+
+        @Override
+        public synchronized boolean commit() {
+            boolean committed = true;
+            for (Editor editor : editors) {
+                if (editor != null) {
+                    committed &= editor.commit();
+                }
+            }
+            return committed;
+        }
+
+        @Override
+        public synchronized void apply() {
+            for (Editor editor : editors) {
+                if (editor != null) {
+                    editor.apply();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@link StorageBackend} on top of SharedPreferences. Serves the XML file, its shards and
+ * EncryptedSharedPreferences alike, as they all implement the SharedPreferences interface.
+ */
+class SharedPreferencesBackend implements StorageBackend {
+
+    private final SharedPreferences preferences;
+
+    SharedPreferencesBackend(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    @Nullable
+    @Override
+    public String get(String key) {
+        return preferences.getString(key, null);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return preferences.contains(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<String, String> getAll() {
+        // getAll returns a copy already; markers of other types, like the shard count, are dropped in place.
+        final Map<String, ?> all = preferences.getAll();
+        for (Iterator<?> iterator = all.values().iterator(); iterator.hasNext(); ) {
+            if (!(iterator.next() instanceof String)) {
+                iterator.remove();
+            }
+        }
+        return (Map<String, String>) all;
+    }
+
+    @Override
+    public Batch edit() {
+        final SharedPreferences.Editor editor = preferences.edit();
+        return new Batch() {
+            @Override
+            public Batch put(String key, String value) {
+                editor.putString(key, value);
+                return this;
+            }
+
+            @Override
+            public Batch remove(String key) {
+                editor.remove(key);
+                return this;
+            }
+
+            @Override
+            public Batch clear() {
+                editor.clear();
+                return this;
+            }
+
+            @Override
+            public boolean commit(boolean durable) {
+                if (durable) {
+                    return editor.commit();
+                }
+                editor.apply();
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.it_nomads.fluttersecurestorage;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Key-value store holding the values of a {@link FlutterSecureStorage} as they are stored, that is
+ * encrypted and with the element prefix in their keys. Implementations must be safe for concurrent
+ * use.
+ */
+interface StorageBackend {
+
+    @Nullable
+    String get(String key);
+
+    boolean contains(String key);
+
+    /**
+     * @return a snapshot of every entry, which the caller may modify.
+     */
+    Map<String, String> getAll();
+
+    /**
+     * Starts a set of changes that is stored together by {@link Batch#commit}.
+     */
+    Batch edit();
+
+    interface Batch {
+
+        Batch put(String key, String value);
+
+        Batch remove(String key);
+
+        /**
+         * Removes every entry. Applied before the other changes of the batch, whenever it is called.
+         */
+        Batch clear();
+
+        /**
+         * Stores the changes at once: reads see either none or all of them.
+         *
+         * @param durable whether to return only once the changes are on disk.
+         * @return false if a durable commit failed.
+         */
+        boolean commit(boolean durable);
+    }
+}
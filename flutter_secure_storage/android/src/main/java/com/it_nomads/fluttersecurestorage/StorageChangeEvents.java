@@ -0,0 +1,52 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Sends the changes of every store to the event channel once they are committed, so Dart code can
+ * update instead of polling. Dart shares one subscription between all its streams and filters the
+ * events by key prefix itself.
+ * <p>
+ * Each event is a map with the "type" of change, the "key" without prefix (null for clear and
+ * migration) and the "sharedPreferencesName" of the store.
+ */
+class StorageChangeEvents implements EventChannel.StreamHandler, FlutterSecureStorage.ChangeListener {
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile EventChannel.EventSink sink;
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        sink = events;
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        sink = null;
+    }
+
+    @Override
+    public void onChange(String sharedPreferencesName, String type, String key) {
+        final EventChannel.EventSink events = sink;
+        if (events == null) {
+            return;
+        }
+
+        final Map<String, Object> event = new HashMap<>();
+        event.put("type", type);
+        event.put("key", key);
+        event.put("sharedPreferencesName", sharedPreferencesName);
+        // Event sinks may only be used on the platform thread.
+        handler.post(() -> {
+            if (sink == events) {
+                events.success(event);
+            }
+        });
+    }
+}
@@ -0,0 +1,157 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The storages, worker threads and metrics shared by every plugin instance of the process. Apps
+ * running several Flutter engines get one plugin instance per engine; sharing the core keeps one
+ * {@link FlutterSecureStorage} and one set of initialized ciphers per configuration, and serializes
+ * writes to a store across all engines.
+ * <p>
+ * Each attached plugin instance holds a reference. Pending writes are stored and the worker threads
+ * stop once the last one detaches; the next attach creates a new core.
+ */
+class StorageCore implements FlutterSecureStorage.ChangeListener {
+
+    private static final String TAG = "StorageCore";
+    private static StorageCore instance;
+    private static int referenceCount;
+
+    final StorageMetrics metrics;
+    final StorageRegistry registry;
+    final StorageExecutor executor;
+    final StoragePrewarmer prewarmer;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<FlutterSecureStorage.ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean shutdown;
+
+    private StorageCore(Context context, int workerThreadCount) {
+        metrics = new StorageMetrics();
+        registry = new StorageRegistry(context, metrics, this);
+        executor = new StorageExecutor(workerThreadCount);
+        prewarmer = new StoragePrewarmer(context);
+    }
+
+    /**
+     * Returns the core of the process, creating it with {@code workerThreadCount} threads if no
+     * plugin instance holds it. Every call must be paired with {@link #release}.
+     */
+    static synchronized StorageCore acquire(Context context, int workerThreadCount) {
+        if (instance == null) {
+            instance = new StorageCore(context.getApplicationContext(), workerThreadCount);
+            instance.prewarm();
+        }
+        referenceCount++;
+        return instance;
+    }
+
+    /**
+     * Drops a reference taken by {@link #acquire}, shutting the core down if it was the last one.
+     */
+    static synchronized void release(StorageCore core) {
+        if (core != instance) {
+            return;
+        }
+        if (--referenceCount == 0) {
+            instance = null;
+            core.shutdown();
+        }
+    }
+
+    void addChangeListener(FlutterSecureStorage.ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    void removeChangeListener(FlutterSecureStorage.ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    @Override
+    public void onChange(String sharedPreferencesName, String type, String key) {
+        for (FlutterSecureStorage.ChangeListener listener : changeListeners) {
+            listener.onChange(sharedPreferencesName, type, key);
+        }
+    }
+
+    /**
+     * Starts initializing the configurations that were used with the prewarm option, so the cost of
+     * key generation and unwrapping is paid before the first call instead of during it.
+     */
+    private void prewarm() {
+        executor.execute(StoragePrewarmer.PREFERENCES_NAME, StorageExecutor.Access.READ, () -> {
+            for (final StorageOptions options : prewarmer.getConfigurations()) {
+                // Exclusive, so a call that replaces the prewarmed instance never initializes the
+                // same store alongside it.
+                executor.execute(options.sharedPreferencesName, StorageExecutor.Access.WRITE, () -> {
+                    final FlutterSecureStorage secureStorage = registry.getForPrewarm(options);
+                    if (secureStorage != null) {
+                        secureStorage.prewarm();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Re-encrypts values left from a previous storage algorithm in the background, one bounded batch
+     * per task, so other calls to the same store can run in between.
+     */
+    void scheduleReEncryption(final FlutterSecureStorage secureStorage) {
+        if (shutdown || !secureStorage.isReEncryptionPending() || !secureStorage.reEncryptionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(secureStorage.options.sharedPreferencesName, StorageExecutor.Access.WRITE, () -> {
+            final boolean more = secureStorage.reEncryptBatch();
+            secureStorage.reEncryptionScheduled.set(false);
+            if (more) {
+                scheduleReEncryption(secureStorage);
+            }
+        });
+    }
+
+    /**
+     * Stores the buffered writes of {@code secureStorage} after a short delay, so writes made in the
+     * meantime are stored with the same disk write.
+     */
+    void scheduleFlush(final FlutterSecureStorage secureStorage) {
+        if (shutdown || !secureStorage.hasPendingWrites() || !secureStorage.flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        handler.postDelayed(() -> {
+            // Once shut down, the pending writes were flushed already.
+            if (!shutdown) {
+                flushPendingWrites(secureStorage);
+            }
+        }, FlutterSecureStorage.WRITE_BEHIND_DELAY_MILLIS);
+    }
+
+    private void flushPendingWrites(final FlutterSecureStorage secureStorage) {
+        executor.execute(secureStorage.options.sharedPreferencesName, StorageExecutor.Access.WRITE, () -> {
+            secureStorage.flushScheduled.set(false);
+            try {
+                secureStorage.flush(FlutterSecureStorage.Durability.APPLY);
+            } catch (Exception e) {
+                Log.e(TAG, "Storing buffered writes failed", e);
+            }
+        });
+    }
+
+    private void shutdown() {
+        shutdown = true;
+        // Buffered writes are stored before the worker threads stop.
+        for (FlutterSecureStorage secureStorage : registry.getStorages()) {
+            if (secureStorage.hasPendingWrites()) {
+                flushPendingWrites(secureStorage);
+            }
+        }
+        executor.shutdown();
+        changeListeners.clear();
+        registry.clear();
+    }
+}
@@ -0,0 +1,197 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs storage tasks on a small pool of worker threads. Each preferences file has its own queue:
+ * reads of the same store run concurrently, writes to a store are serialized, and tasks for
+ * different stores never wait for each other. A task is handed to the pool only once its store can
+ * run it, so a busy store never holds worker threads that other stores could use.
+ * <p>
+ * Shutting down lets the submitted tasks finish, including the ones still waiting for their store
+ * and the ones they submit; the threads stop once none are left.
+ */
+class StorageExecutor {
+
+    enum Access {
+        READ,
+        WRITE
+    }
+
+    private static final String TAG = "StorageExecutor";
+    static final int DEFAULT_THREAD_COUNT = 4;
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, StoreQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    // Submitted tasks that have not finished, guarded by this.
+    private int outstanding;
+    private boolean shutdown;
+
+    StorageExecutor(int threadCount) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "com.it_nomads.fluttersecurestorage.worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    /**
+     * Runs {@code task} on a worker thread once no write to {@code store} is running, and for a
+     * write, once no other task of {@code store} is running either. Tasks of a store start in
+     * submission order.
+     */
+    void execute(String store, Access access, Runnable task) {
+        synchronized (this) {
+            if (shutdown && outstanding == 0) {
+                Log.w(TAG, "Dropping a task submitted after shutdown");
+                return;
+            }
+            outstanding++;
+        }
+        pending.incrementAndGet();
+        getQueue(store).submit(new QueuedTask(access, task, System.nanoTime()));
+    }
+
+    private StoreQueue getQueue(String store) {
+        StoreQueue queue = queues.get(store);
+        if (queue == null) {
+            final StoreQueue created = new StoreQueue();
+            queue = queues.putIfAbsent(store, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    private void recordWait(long waitNanos) {
+        startedCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            // Retry until the maximum reflects this wait.
+        }
+    }
+
+    /**
+     * Number of submitted tasks that have not started yet, either waiting for their store or queued
+     * for a thread.
+     */
+    int getQueueDepth() {
+        return pending.get();
+    }
+
+    long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Average time between submitting a task and the task starting, including the wait for its store.
+     */
+    long getAverageWaitNanos() {
+        final long started = startedCount.get();
+        return started == 0 ? 0 : totalWaitNanos.get() / started;
+    }
+
+    long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    synchronized void shutdown() {
+        shutdown = true;
+        if (outstanding == 0) {
+            executor.shutdown();
+        }
+    }
+
+    private synchronized void onTaskFinished() {
+        if (--outstanding == 0 && shutdown) {
+            executor.shutdown();
+        }
+    }
+
+    private static final class QueuedTask {
+        final Access access;
+        final Runnable task;
+        final long submittedAt;
+
+        QueuedTask(Access access, Runnable task, long submittedAt) {
+            this.access = access;
+            this.task = task;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    /**
+     * Tasks of one store that may not run yet, and the tasks of the store currently running.
+     */
+    private final class StoreQueue {
+        private final ArrayDeque<QueuedTask> waiting = new ArrayDeque<>();
+        private int runningReads;
+        private boolean writeRunning;
+
+        synchronized void submit(QueuedTask task) {
+            waiting.add(task);
+            dispatch();
+        }
+
+        /**
+         * Hands the tasks at the head of the queue that may run now to the pool. A waiting write
+         * holds back the reads submitted after it, so writes are not starved by a stream of reads.
+         */
+        private void dispatch() {
+            while (!writeRunning && !waiting.isEmpty()) {
+                final QueuedTask task = waiting.peek();
+                if (task.access == Access.WRITE) {
+                    if (runningReads > 0) {
+                        return;
+                    }
+                    writeRunning = true;
+                } else {
+                    runningReads++;
+                }
+                waiting.poll();
+                executor.execute(() -> run(task));
+            }
+        }
+
+        private void run(QueuedTask task) {
+            recordWait(System.nanoTime() - task.submittedAt);
+            pending.decrementAndGet();
+            try {
+                task.task.run();
+            } finally {
+                completedCount.incrementAndGet();
+                // Hands on the next tasks of the store before the pool may stop.
+                finish(task);
+                onTaskFinished();
+            }
+        }
+
+        private synchronized void finish(QueuedTask task) {
+            if (task.access == Access.WRITE) {
+                writeRunning = false;
+            } else {
+                runningReads--;
+            }
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and call counts per method channel method, split into phases. Recording is
+ * off by default; while it is off, instrumented code only reads a volatile flag.
+ * <p>
+ * A method call is attributed to the worker thread running it between {@link #begin} and
+ * {@link #end}. Phases measured on that thread in between are added to the method's histograms.
+ */
+final class StorageMetrics {
+
+    enum Phase {
+        // Waiting for a worker thread and the store lock.
+        QUEUE("queue"),
+        // First use of a configuration: preferences, key unwrap, migrations.
+        INIT("init"),
+        // Encrypting and decrypting values, including value files.
+        CRYPTO("crypto"),
+        // Committing or applying preference changes.
+        IO("io"),
+        // The whole call on the worker thread, without queueing.
+        TOTAL("total");
+
+        final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+    }
+
+    private static final ThreadLocal<MethodMetrics> current = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile long resetAt = System.nanoTime();
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void reset() {
+        methods.clear();
+        resetAt = System.nanoTime();
+    }
+
+    /**
+     * @return the start time of a measurement, or 0 while recording is off.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Adds the time since {@code start} to a phase of the method running on this thread.
+     */
+    void record(Phase phase, long start) {
+        if (start == 0L) {
+            return;
+        }
+        final MethodMetrics metrics = current.get();
+        if (metrics != null) {
+            metrics.phases[phase.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Attributes the phases measured on this thread to {@code method} until {@link #end}.
+     *
+     * @param submittedAt result of {@link #start} when the call was queued.
+     * @return the start time to pass to {@link #end}, or 0 while recording is off.
+     */
+    long begin(String method, long submittedAt) {
+        if (!enabled) {
+            return 0L;
+        }
+        final long now = System.nanoTime();
+        final MethodMetrics metrics = getMethodMetrics(method);
+        if (submittedAt != 0L) {
+            metrics.phases[Phase.QUEUE.ordinal()].record(now - submittedAt);
+        }
+        current.set(metrics);
+        return now;
+    }
+
+    void end(long start, boolean failed) {
+        if (start == 0L) {
+            return;
+        }
+        final MethodMetrics metrics = current.get();
+        current.remove();
+        if (metrics == null) {
+            return;
+        }
+        metrics.phases[Phase.TOTAL.ordinal()].record(System.nanoTime() - start);
+        metrics.calls.incrementAndGet();
+        if (failed) {
+            metrics.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the recorded metrics in a form the standard message codec can send.
+     */
+    Map<String, Object> snapshot() {
+        final double elapsedSeconds = (System.nanoTime() - resetAt) / 1e9;
+        final Map<String, Object> methodSnapshots = new HashMap<>();
+        for (Map.Entry<String, MethodMetrics> entry : methods.entrySet()) {
+            final MethodMetrics metrics = entry.getValue();
+            final long calls = metrics.calls.get();
+            final Map<String, Object> methodSnapshot = new HashMap<>();
+            methodSnapshot.put("count", calls);
+            methodSnapshot.put("errors", metrics.errors.get());
+            methodSnapshot.put("throughputPerSecond", elapsedSeconds > 0 ? calls / elapsedSeconds : 0.0);
+            for (Phase phase : Phase.values()) {
+                final LatencyHistogram histogram = metrics.phases[phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    methodSnapshot.put(phase.key, histogram.snapshot());
+                }
+            }
+            methodSnapshots.put(entry.getKey(), methodSnapshot);
+        }
+
+        final Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("elapsedMillis", (long) (elapsedSeconds * 1000));
+        snapshot.put("methods", methodSnapshots);
+        return snapshot;
+    }
+
+    private MethodMetrics getMethodMetrics(String method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            final MethodMetrics created = new MethodMetrics();
+            metrics = methods.putIfAbsent(method, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    private static final class MethodMetrics {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        MethodMetrics() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Lock-free histogram with power-of-two buckets: bucket {@code i} counts durations below
+     * 2^i nanoseconds. Percentiles are reported as the upper bound of their bucket.
+     */
+    static final class LatencyHistogram {
+        private static final int BUCKET_COUNT = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets.incrementAndGet(Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        Map<String, Object> snapshot() {
+            final long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+
+            final Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("count", total);
+            snapshot.put("totalMicros", totalNanos.get() / 1000.0);
+            snapshot.put("meanMicros", total > 0 ? totalNanos.get() / 1000.0 / total : 0.0);
+            snapshot.put("maxMicros", maxNanos.get() / 1000.0);
+            snapshot.put("p50Micros", percentileMicros(counts, total, 0.50));
+            snapshot.put("p90Micros", percentileMicros(counts, total, 0.90));
+            snapshot.put("p99Micros", percentileMicros(counts, total, 0.99));
+            return snapshot;
+        }
+
+        private double percentileMicros(long[] counts, long total, double percentile) {
+            final long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(Math.pow(2, i), maxNanos.get()) / 1000.0;
+                }
+            }
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Options map received over the method channel, compiled into the values that identify a storage
+ * configuration. All configurations with the same preferences name share one initialized
+ * {@link FlutterSecureStorage}; only their key prefixes may differ, see {@link #getConflict}.
+ */
+final class StorageOptions {
+
+    enum Backend {
+        SHARED_PREFERENCES,
+        LOG
+    }
+
+    private static final String TAG = "SecureStorageOptions";
+    static final String DEFAULT_SHARED_PREFERENCES_NAME = "FlutterSecureStorage";
+    static final String DEFAULT_PREFERENCES_KEY_PREFIX = "VGhpcyBpcyB0aGUgcHJlZml4IGZvciBhIHNlY3VyZSBzdG9yYWdlCg";
+
+    final String sharedPreferencesName;
+    final String preferencesKeyPrefix;
+    final String keyCipherAlgorithm;
+    final String storageCipherAlgorithm;
+    final boolean useEncryptedSharedPreferences;
+    final int cacheSize;
+    final int largeValueThreshold;
+    final int compressionThreshold;
+    final int shardCount;
+    final Backend backend;
+
+    // Not part of the configuration identity, only affects how the plugin handles errors.
+    final boolean resetOnError;
+    // Not part of the configuration identity, initialize this configuration when the plugin is attached.
+    final boolean prewarm;
+    // Raw options as received, kept for StorageCipherFactory.
+    final Map<String, Object> options;
+
+    private StorageOptions(Map<String, Object> options) {
+        this.options = options;
+        sharedPreferencesName = getNonEmptyString(options, "sharedPreferencesName", DEFAULT_SHARED_PREFERENCES_NAME);
+        preferencesKeyPrefix = getNonEmptyString(options, "preferencesKeyPrefix", DEFAULT_PREFERENCES_KEY_PREFIX);
+        keyCipherAlgorithm = getNonEmptyString(options, "keyCipherAlgorithm", "");
+        storageCipherAlgorithm = getNonEmptyString(options, "storageCipherAlgorithm", "");
+        useEncryptedSharedPreferences = "true".equals(options.get("encryptedSharedPreferences")) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+        resetOnError = "true".equals(options.get("resetOnError"));
+        prewarm = "true".equals(options.get("prewarm"));
+        cacheSize = getInt(options, "cacheSize");
+        largeValueThreshold = getInt(options, "largeValueThreshold");
+        compressionThreshold = getInt(options, "compressionThreshold");
+        shardCount = getInt(options, "shardCount");
+        backend = "log".equals(options.get("storageBackend")) ? Backend.LOG : Backend.SHARED_PREFERENCES;
+    }
+
+    static StorageOptions fromMap(Map<String, Object> options) {
+        return new StorageOptions(options != null ? options : Collections.<String, Object>emptyMap());
+    }
+
+    private static String getNonEmptyString(Map<String, Object> options, String key, String defaultValue) {
+        final Object value = options.get(key);
+        if (value == null || value.toString().isEmpty()) {
+            return defaultValue;
+        }
+        return value.toString();
+    }
+
+    private static int getInt(Map<String, Object> options, String key) {
+        final Object value = options.get(key);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.toString());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid " + key + " option, using 0");
+            return 0;
+        }
+    }
+
+    /**
+     * Options that define the layout of the preferences file are properties of the store, not of a
+     * single configuration. A configuration that disagrees with the one the store was opened with
+     * would otherwise reformat the file under it.
+     *
+     * @return the name of the first store option that differs from {@code other}, null if none.
+     */
+    String getConflict(StorageOptions other) {
+        if (useEncryptedSharedPreferences != other.useEncryptedSharedPreferences) return "encryptedSharedPreferences";
+        if (!keyCipherAlgorithm.equals(other.keyCipherAlgorithm)) return "keyCipherAlgorithm";
+        if (!storageCipherAlgorithm.equals(other.storageCipherAlgorithm)) return "storageCipherAlgorithm";
+        if (cacheSize != other.cacheSize) return "cacheSize";
+        if (largeValueThreshold != other.largeValueThreshold) return "largeValueThreshold";
+        if (compressionThreshold != other.compressionThreshold) return "compressionThreshold";
+        if (shardCount != other.shardCount) return "shardCount";
+        if (backend != other.backend) return "storageBackend";
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof StorageOptions)) return false;
+        StorageOptions that = (StorageOptions) o;
+        return useEncryptedSharedPreferences == that.useEncryptedSharedPreferences
+                && cacheSize == that.cacheSize
+                && largeValueThreshold == that.largeValueThreshold
+                && compressionThreshold == that.compressionThreshold
+                && shardCount == that.shardCount
+                && backend == that.backend
+                && sharedPreferencesName.equals(that.sharedPreferencesName)
+                && preferencesKeyPrefix.equals(that.preferencesKeyPrefix)
+                && keyCipherAlgorithm.equals(that.keyCipherAlgorithm)
+                && storageCipherAlgorithm.equals(that.storageCipherAlgorithm);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = sharedPreferencesName.hashCode();
+        result = 31 * result + preferencesKeyPrefix.hashCode();
+        result = 31 * result + keyCipherAlgorithm.hashCode();
+        result = 31 * result + storageCipherAlgorithm.hashCode();
+        result = 31 * result + (useEncryptedSharedPreferences ? 1 : 0);
+        result = 31 * result + cacheSize;
+        result = 31 * result + largeValueThreshold;
+        result = 31 * result + compressionThreshold;
+        result = 31 * result + shardCount;
+        result = 31 * result + backend.hashCode();
+        return result;
+    }
+}
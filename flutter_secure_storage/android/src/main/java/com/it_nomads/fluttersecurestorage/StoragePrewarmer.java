@@ -0,0 +1,144 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the storage configurations used with the "prewarm" option, so the next time the plugin
+ * is attached their preferences and ciphers can be initialized before the first call arrives. Each
+ * configuration is stored with the time it was last used with the option; configurations not used
+ * with it for {@link #STALE_AFTER_MILLIS} are dropped when the plugin is attached, and so are the
+ * ones a call with different store options replaced.
+ */
+class StoragePrewarmer {
+
+    private static final String TAG = "SecureStoragePrewarm";
+    static final String PREFERENCES_NAME = "FlutterSecureStoragePrewarm";
+    static final long STALE_AFTER_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long REFRESH_AFTER_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Context applicationContext;
+    // Configurations already recorded in this process.
+    private final Set<StorageOptions> updated = Collections.newSetFromMap(new ConcurrentHashMap<StorageOptions, Boolean>());
+
+    StoragePrewarmer(Context context) {
+        applicationContext = context.getApplicationContext();
+    }
+
+    /**
+     * Records that {@code options} should be prewarmed on the next attach if they use the option, and
+     * drops the recorded configurations of the same store whose store options differ. Each
+     * configuration touches the disk at most once per process, and records it at most once a day.
+     */
+    void update(StorageOptions options) {
+        if (!updated.add(options)) {
+            return;
+        }
+
+        final SharedPreferences preferences = getPreferences();
+        final SharedPreferences.Editor editor = preferences.edit();
+        boolean changed = false;
+        for (String key : preferences.getAll().keySet()) {
+            try {
+                final StorageOptions recorded = parse(key);
+                if (recorded.sharedPreferencesName.equals(options.sharedPreferencesName) && recorded.getConflict(options) != null) {
+                    editor.remove(key);
+                    changed = true;
+                }
+            } catch (JSONException e) {
+                // Dropped by getConfigurations.
+            }
+        }
+        if (options.prewarm) {
+            final String key = serialize(options);
+            final long now = System.currentTimeMillis();
+            if (now - getLastUsed(preferences, key) >= REFRESH_AFTER_MILLIS) {
+                editor.putLong(key, now);
+                changed = true;
+            }
+        }
+        if (changed) {
+            editor.apply();
+        }
+    }
+
+    /**
+     * @return the configurations to prewarm, after dropping the stale and invalid ones. Reads from
+     * disk, so not to be called on the platform thread.
+     */
+    List<StorageOptions> getConfigurations() {
+        final List<StorageOptions> configurations = new ArrayList<>();
+        final SharedPreferences preferences = getPreferences();
+        final SharedPreferences.Editor stale = preferences.edit();
+        boolean hasStale = false;
+        final long now = System.currentTimeMillis();
+        for (String key : preferences.getAll().keySet()) {
+            if (now - getLastUsed(preferences, key) >= STALE_AFTER_MILLIS) {
+                stale.remove(key);
+                hasStale = true;
+                continue;
+            }
+            try {
+                configurations.add(parse(key));
+            } catch (JSONException e) {
+                Log.e(TAG, "Dropping invalid prewarm configuration", e);
+                stale.remove(key);
+                hasStale = true;
+            }
+        }
+        if (hasStale) {
+            stale.apply();
+        }
+        return configurations;
+    }
+
+    /**
+     * @return when the configuration {@code key} was last used with prewarm, 0 if unknown.
+     */
+    private static long getLastUsed(SharedPreferences preferences, String key) {
+        try {
+            return preferences.getLong(key, 0);
+        } catch (ClassCastException e) {
+            return 0;
+        }
+    }
+
+    private static StorageOptions parse(String key) throws JSONException {
+        final JSONObject json = new JSONObject(key);
+        final Map<String, Object> options = new HashMap<>();
+        final Iterator<String> names = json.keys();
+        while (names.hasNext()) {
+            final String name = names.next();
+            options.put(name, json.getString(name));
+        }
+        return StorageOptions.fromMap(options);
+    }
+
+    private SharedPreferences getPreferences() {
+        return applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String serialize(StorageOptions options) {
+        // Sorted, so equal options always give the same key. The flag itself is not part of it.
+        final Map<String, Object> sorted = new TreeMap<>(options.options);
+        sorted.remove("prewarm");
+        // Error handling does not affect what gets initialized.
+        sorted.remove("resetOnError");
+        return new JSONObject(sorted).toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.it_nomads.fluttersecurestorage;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps one {@link FlutterSecureStorage} per preferences name, so preferences, ciphers and
+ * EncryptedSharedPreferences are set up once per file instead of on every call, and all
+ * configurations of a file share its cache, key index and pending writes.
+ */
+class StorageRegistry {
+
+    private final Context applicationContext;
+    private final StorageMetrics metrics;
+    private final FlutterSecureStorage.ChangeListener changeListener;
+    private final Map<String, FlutterSecureStorage> storages = new HashMap<>();
+    // Stores opened by getForPrewarm that no call has used yet.
+    private final Set<String> prewarmed = new HashSet<>();
+
+    StorageRegistry(Context context, StorageMetrics metrics, FlutterSecureStorage.ChangeListener changeListener) {
+        applicationContext = context.getApplicationContext();
+        this.metrics = metrics;
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * A store opened for prewarm gives way to the first call with conflicting options, as the
+     * configuration recorded for prewarm may be outdated.
+     *
+     * @throws IllegalArgumentException if the store of {@code options} was opened by an earlier call
+     *                                  with different store options, see {@link StorageOptions#getConflict}.
+     */
+    synchronized FlutterSecureStorage get(StorageOptions options) {
+        FlutterSecureStorage storage = storages.get(options.sharedPreferencesName);
+        final boolean wasPrewarmed = prewarmed.remove(options.sharedPreferencesName);
+        if (storage != null) {
+            final String conflict = storage.options.getConflict(options);
+            if (conflict == null) {
+                storage.addKeyPrefix(options.preferencesKeyPrefix);
+                return storage;
+            }
+            if (!wasPrewarmed) {
+                throw new IllegalArgumentException("Option " + conflict + " differs from the one "
+                        + options.sharedPreferencesName + " was opened with");
+            }
+        }
+        storage = new FlutterSecureStorage(applicationContext, options, metrics, changeListener);
+        storages.put(options.sharedPreferencesName, storage);
+        return storage;
+    }
+
+    /**
+     * Opens the store of {@code options} for prewarm, without claiming it for these options.
+     *
+     * @return null if the store is open already with conflicting options.
+     */
+    synchronized FlutterSecureStorage getForPrewarm(StorageOptions options) {
+        FlutterSecureStorage storage = storages.get(options.sharedPreferencesName);
+        if (storage == null) {
+            storage = new FlutterSecureStorage(applicationContext, options, metrics, changeListener);
+            storages.put(options.sharedPreferencesName, storage);
+            prewarmed.add(options.sharedPreferencesName);
+            return storage;
+        }
+        if (storage.options.getConflict(options) != null) {
+            return null;
+        }
+        storage.addKeyPrefix(options.preferencesKeyPrefix);
+        return storage;
+    }
+
+    /**
+     * @return the storage of {@code options} if it was created already, without creating it.
+     */
+    synchronized FlutterSecureStorage peek(StorageOptions options) {
+        return storages.get(options.sharedPreferencesName);
+    }
+
+    synchronized List<FlutterSecureStorage> getStorages() {
+        return new ArrayList<>(storages.values());
+    }
+
+    synchronized void clear() {
+        storages.clear();
+        prewarmed.clear();
+    }
+}
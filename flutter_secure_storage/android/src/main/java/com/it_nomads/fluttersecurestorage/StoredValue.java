@@ -0,0 +1,90 @@
+package com.it_nomads.fluttersecurestorage;
+
+/**
+ * Header for stored values that are more than plain Base64 ciphertext.
+ * <p>
+ * Format: {@code "!" + flags as one hex digit + optional algorithm code + ":" + payload}.
+ * Base64 never contains '!' or ':', so values written without a header are still read as plain
+ * Base64 ciphertext. Values without an algorithm code were encrypted with the store's saved
+ * storage algorithm.
+ */
+final class StoredValue {
+
+    /**
+     * The payload is the name of a file holding the encrypted value.
+     */
+    static final int FLAG_FILE = 0x1;
+
+    /**
+     * The value was written as bytes. Reading it as a string gives the bytes Base64 encoded.
+     */
+    static final int FLAG_BINARY = 0x2;
+
+    /**
+     * The value was deflated before encryption, see {@link ValueCompression}.
+     */
+    static final int FLAG_COMPRESSED = 0x4;
+
+    /**
+     * No algorithm code in the header, the store's saved algorithm applies.
+     */
+    static final int NO_ALGORITHM = -1;
+
+    private static final char MARKER = '!';
+    private static final char SEPARATOR = ':';
+
+    final int flags;
+    final int algorithm;
+    final String payload;
+
+    private StoredValue(int flags, int algorithm, String payload) {
+        this.flags = flags;
+        this.algorithm = algorithm;
+        this.payload = payload;
+    }
+
+    boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * @return the parsed value, or null if {@code raw} has no header.
+     */
+    static StoredValue parse(String raw) {
+        if (raw == null || raw.length() < 3 || raw.charAt(0) != MARKER) {
+            return null;
+        }
+        final int flags = Character.digit(raw.charAt(1), 16);
+        if (flags < 0) {
+            return null;
+        }
+        if (raw.charAt(2) == SEPARATOR) {
+            return new StoredValue(flags, NO_ALGORITHM, raw.substring(3));
+        }
+        final int algorithm = raw.length() > 3 && raw.charAt(3) == SEPARATOR ? Character.digit(raw.charAt(2), 36) : -1;
+        if (algorithm < 0) {
+            return null;
+        }
+        return new StoredValue(flags, algorithm, raw.substring(4));
+    }
+
+    static String encode(int flags, int algorithm, String payload) {
+        final StringBuilder builder = new StringBuilder(payload.length() + 4);
+        builder.append(MARKER).append(Integer.toHexString(flags));
+        if (algorithm != NO_ALGORITHM) {
+            builder.append(Character.forDigit(algorithm, 36));
+        }
+        return builder.append(SEPARATOR).append(payload).toString();
+    }
+
+    /**
+     * Encodes {@code payload} with a header only where one is needed, so values look exactly like
+     * before whenever no flag or algorithm tag applies.
+     */
+    static String encodeIfNeeded(int flags, int algorithm, String payload) {
+        if (flags == 0 && algorithm == NO_ALGORITHM) {
+            return payload;
+        }
+        return encode(flags, algorithm, payload);
+    }
+}
@@ -0,0 +1,134 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Scratch buffers for encoding and decoding values, one set per thread, so converting between
+ * strings, plain bytes, compressed bytes, ciphertext and Base64 does not allocate intermediate arrays. Buffers grow on
+ * demand up to {@link #MAX_POOLED_SIZE}; larger requests get a new array that is not kept.
+ */
+final class ValueBuffers {
+
+    static final int MAX_POOLED_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ValueBuffers> buffers = new ThreadLocal<ValueBuffers>() {
+        @Override
+        protected ValueBuffers initialValue() {
+            return new ValueBuffers();
+        }
+    };
+
+    private byte[] plain = new byte[0];
+    private byte[] encrypted = new byte[0];
+    private byte[] deflated = new byte[0];
+    private char[] chars = new char[0];
+    private CharsetEncoder encoder;
+    private Deflater deflater;
+    private Inflater inflater;
+
+    private ValueBuffers() {
+    }
+
+    static ValueBuffers get() {
+        return buffers.get();
+    }
+
+    /**
+     * @return a buffer for plain bytes of at least {@code size} bytes. Callers clear it with
+     * {@link #clear} once done, so no plain value stays in memory.
+     */
+    byte[] plain(int size) {
+        if (size > MAX_POOLED_SIZE) {
+            return new byte[size];
+        }
+        if (plain.length < size) {
+            plain = new byte[size];
+        }
+        return plain;
+    }
+
+    byte[] encrypted(int size) {
+        if (size > MAX_POOLED_SIZE) {
+            return new byte[size];
+        }
+        if (encrypted.length < size) {
+            encrypted = new byte[size];
+        }
+        return encrypted;
+    }
+
+    /**
+     * @return a buffer for compressed plain bytes, cleared by callers like the plain buffer.
+     */
+    byte[] deflated(int size) {
+        if (size > MAX_POOLED_SIZE) {
+            return new byte[size];
+        }
+        if (deflated.length < size) {
+            deflated = new byte[size];
+        }
+        return deflated;
+    }
+
+    char[] chars(int size) {
+        if (size > MAX_POOLED_SIZE) {
+            return new char[size];
+        }
+        if (chars.length < size) {
+            chars = new char[size];
+        }
+        return chars;
+    }
+
+    /**
+     * Encodes {@code value} into the plain buffer. Malformed characters are replaced, as
+     * {@link String#getBytes(Charset)} does.
+     *
+     * @return the encoded value, from position 0 to the limit of a buffer backed by an array.
+     */
+    ByteBuffer encodeText(String value, Charset charset) {
+        if (encoder == null || !encoder.charset().equals(charset)) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        final ByteBuffer out = ByteBuffer.wrap(plain((int) Math.ceil(value.length() * (double) encoder.maxBytesPerChar())));
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(value), out, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(out);
+        }
+        if (result.isError() || result.isOverflow()) {
+            // Not expected with replacement and a buffer of the maximum size.
+            return ByteBuffer.wrap(value.getBytes(charset));
+        }
+        out.flip();
+        return out;
+    }
+
+    Deflater deflater() {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+        return deflater;
+    }
+
+    Inflater inflater() {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        return inflater;
+    }
+
+    static void clear(byte[] buffer, int length) {
+        Arrays.fill(buffer, 0, length, (byte) 0);
+    }
+}
@@ -0,0 +1,81 @@
+package com.it_nomads.fluttersecurestorage;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of plain values before encryption. A compressed value is the length of the
+ * original value as four bytes, followed by the zlib stream.
+ */
+final class ValueCompression {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_RATIO = 1032;
+
+    private ValueCompression() {
+    }
+
+    /**
+     * Compresses {@code length} bytes of {@code input} into {@code output}, which must hold at least
+     * {@code length} bytes.
+     *
+     * @return the compressed length, or -1 if compressing would not make the value smaller.
+     */
+    static int deflate(Deflater deflater, byte[] input, int length, byte[] output) {
+        if (length <= HEADER_SIZE) {
+            return -1;
+        }
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int out = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (out >= length) {
+                return -1;
+            }
+            out += deflater.deflate(output, out, length - out);
+        }
+        output[0] = (byte) (length >>> 24);
+        output[1] = (byte) (length >>> 16);
+        output[2] = (byte) (length >>> 8);
+        output[3] = (byte) length;
+        return out < length ? out : -1;
+    }
+
+    /**
+     * @return the length of the original value that {@code input} was compressed from.
+     */
+    static int getInflatedLength(byte[] input, int length) throws IOException {
+        if (length < HEADER_SIZE) {
+            throw new IOException("Corrupt compressed value");
+        }
+        final int inflatedLength = (input[0] & 0xff) << 24 | (input[1] & 0xff) << 16 | (input[2] & 0xff) << 8 | (input[3] & 0xff);
+        // Deflate cannot compress by more than about 1032:1, anything beyond is corrupt.
+        if (inflatedLength < 0 || inflatedLength > (long) length * MAX_RATIO) {
+            throw new IOException("Corrupt compressed value");
+        }
+        return inflatedLength;
+    }
+
+    /**
+     * Decompresses {@code input} into the first {@link #getInflatedLength} bytes of {@code output}.
+     */
+    static void inflate(Inflater inflater, byte[] input, int length, byte[] output, int inflatedLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(input, HEADER_SIZE, length - HEADER_SIZE);
+        int out = 0;
+        try {
+            while (out < inflatedLength) {
+                final int count = inflater.inflate(output, out, inflatedLength - out);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt compressed value");
+                }
+                out += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed value", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.it_nomads.fluttersecurestorage.ciphers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+
+/**
+ * Bounded pool of {@link Cipher} instances. A Cipher is stateful and must only be used by one
+ * thread at a time, so every operation borrows its own instance. Acquiring never blocks: when no
+ * idle instance is available a new one is created, and at most {@code maxIdle} instances are kept
+ * for reuse afterwards.
+ */
+public final class CipherPool {
+
+    @FunctionalInterface
+    interface CipherSupplier {
+        Cipher get() throws Exception;
+    }
+
+    private final CipherSupplier supplier;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Cipher> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong createCount = new AtomicLong();
+
+    CipherPool(CipherSupplier supplier, int maxIdle) {
+        this.supplier = supplier;
+        this.maxIdle = maxIdle;
+    }
+
+    Cipher acquire() throws Exception {
+        acquireCount.incrementAndGet();
+        Cipher cipher = idle.poll();
+        if (cipher != null) {
+            idleCount.decrementAndGet();
+        } else {
+            cipher = supplier.get();
+            createCount.incrementAndGet();
+        }
+
+        final int current = inUse.incrementAndGet();
+        int peak;
+        while (current > (peak = peakInUse.get()) && !peakInUse.compareAndSet(peak, current)) {
+            // Retry until the peak reflects the current usage.
+        }
+        return cipher;
+    }
+
+    void release(Cipher cipher) {
+        inUse.decrementAndGet();
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(cipher);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Total number of operations that borrowed a cipher.
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Number of Cipher instances created. Anything above the pool size means threads found the pool
+     * empty, which is the contention signal.
+     */
+    public long getCreateCount() {
+        return createCount.get();
+    }
+
+    /**
+     * Highest number of ciphers borrowed at the same time.
+     */
+    public int getPeakInUse() {
+        return peakInUse.get();
+    }
+}
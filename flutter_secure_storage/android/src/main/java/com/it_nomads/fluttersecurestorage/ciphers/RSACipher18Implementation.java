@@ -9,6 +9,7 @@ import android.security.keystore.KeyProperties;
 import androidx.annotation.RequiresApi;
 
 import java.math.BigInteger;
+import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
@@ -18,16 +19,28 @@ import java.security.cert.Certificate;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.Cipher;
 import javax.security.auth.x500.X500Principal;
 
+/**
+ * Wraps AES keys with an RSA key pair held in the AndroidKeyStore. The keystore handle and the key
+ * references are loaded once per process and shared by all instances, since each lookup is an IPC
+ * call into the keystore service. Wrapping and unwrapping reuse one Cipher per instance.
+ */
 class RSACipher18Implementation implements KeyCipher {
 
     private static final String KEYSTORE_PROVIDER_ANDROID = "AndroidKeyStore";
     private static final String TYPE_RSA = "RSA";
+    private static final Object keyStoreLock = new Object();
+    private static volatile KeyStore keyStore;
+    private static final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+    private static final Map<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
     protected final String keyAlias;
     protected final Context context;
+    private Cipher rsaCipher;
 
 
     public RSACipher18Implementation(Context context) throws Exception {
@@ -41,53 +54,119 @@ class RSACipher18Implementation implements KeyCipher {
     }
 
     @Override
-    public byte[] wrap(Key key) throws Exception {
-        PublicKey publicKey = getPublicKey();
-        Cipher cipher = getRSACipher();
+    public synchronized byte[] wrap(Key key) throws Exception {
+        try {
+            return wrap(key, getPublicKey());
+        } catch (InvalidKeyException e) {
+            // The cached reference may belong to a key that was deleted or regenerated since.
+            invalidateKeys(keyAlias);
+            return wrap(key, getPublicKey());
+        }
+    }
+
+    @Override
+    public synchronized Key unwrap(byte[] wrappedKey, String algorithm) throws Exception {
+        try {
+            return unwrap(wrappedKey, algorithm, getPrivateKey());
+        } catch (InvalidKeyException e) {
+            invalidateKeys(keyAlias);
+            return unwrap(wrappedKey, algorithm, getPrivateKey());
+        }
+    }
+
+    private byte[] wrap(Key key, PublicKey publicKey) throws Exception {
+        Cipher cipher = getCachedRSACipher();
         cipher.init(Cipher.WRAP_MODE, publicKey, getAlgorithmParameterSpec());
 
         return cipher.wrap(key);
     }
 
-    @Override
-    public Key unwrap(byte[] wrappedKey, String algorithm) throws Exception {
-        PrivateKey privateKey = getPrivateKey();
-        Cipher cipher = getRSACipher();
+    private Key unwrap(byte[] wrappedKey, String algorithm, PrivateKey privateKey) throws Exception {
+        Cipher cipher = getCachedRSACipher();
         cipher.init(Cipher.UNWRAP_MODE, privateKey, getAlgorithmParameterSpec());
 
         return cipher.unwrap(wrappedKey, algorithm, Cipher.SECRET_KEY);
     }
 
-    private PrivateKey getPrivateKey() throws Exception {
-        KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
-        ks.load(null);
+    private Cipher getCachedRSACipher() throws Exception {
+        if (rsaCipher == null) {
+            rsaCipher = getRSACipher();
+        }
+        return rsaCipher;
+    }
+
+    private static KeyStore getKeyStore() throws Exception {
+        KeyStore ks = keyStore;
+        if (ks == null) {
+            synchronized (keyStoreLock) {
+                ks = keyStore;
+                if (ks == null) {
+                    ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
+                    ks.load(null);
+                    keyStore = ks;
+                }
+            }
+        }
+        return ks;
+    }
+
+    /**
+     * Drops the cached references of {@code alias}, to be called whenever its key pair is created or
+     * found to be invalid.
+     */
+    private static void invalidateKeys(String alias) {
+        privateKeys.remove(alias);
+        publicKeys.remove(alias);
+    }
 
-        Key key = ks.getKey(keyAlias, null);
+    /**
+     * @return the private key of {@code keyAlias}, or null if there is none.
+     */
+    private PrivateKey findPrivateKey() throws Exception {
+        PrivateKey privateKey = privateKeys.get(keyAlias);
+        if (privateKey != null) {
+            return privateKey;
+        }
+
+        Key key = getKeyStore().getKey(keyAlias, null);
         if (key == null) {
-            throw new Exception("No key found under alias: " + keyAlias);
+            return null;
         }
 
         if (!(key instanceof PrivateKey)) {
             throw new Exception("Not an instance of a PrivateKey");
         }
 
-        return (PrivateKey) key;
+        privateKey = (PrivateKey) key;
+        privateKeys.put(keyAlias, privateKey);
+        return privateKey;
+    }
+
+    private PrivateKey getPrivateKey() throws Exception {
+        PrivateKey key = findPrivateKey();
+        if (key == null) {
+            throw new Exception("No key found under alias: " + keyAlias);
+        }
+        return key;
     }
 
     private PublicKey getPublicKey() throws Exception {
-        KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
-        ks.load(null);
+        PublicKey key = publicKeys.get(keyAlias);
+        if (key != null) {
+            return key;
+        }
 
-        Certificate cert = ks.getCertificate(keyAlias);
+        Certificate cert = getKeyStore().getCertificate(keyAlias);
         if (cert == null) {
             throw new Exception("No certificate found under alias: " + keyAlias);
         }
 
-        PublicKey key = cert.getPublicKey();
+        key = cert.getPublicKey();
         if (key == null) {
             throw new Exception("No key found under alias: " + keyAlias);
         }
 
+        publicKeys.put(keyAlias, key);
         return key;
     }
 
@@ -104,12 +183,11 @@ class RSACipher18Implementation implements KeyCipher {
     }
 
     private void createRSAKeysIfNeeded(Context context) throws Exception {
-        KeyStore ks = KeyStore.getInstance(KEYSTORE_PROVIDER_ANDROID);
-        ks.load(null);
-
-        Key privateKey = ks.getKey(keyAlias, null);
-        if (privateKey == null) {
-            createKeys(context);
+        synchronized (keyStoreLock) {
+            if (findPrivateKey() == null) {
+                createKeys(context);
+                invalidateKeys(keyAlias);
+            }
         }
     }
 
@@ -1,7 +1,56 @@
 package com.it_nomads.fluttersecurestorage.ciphers;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Encrypts and decrypts stored values.
+ * <p>
+ * Implementations must be thread-safe: {@link #encrypt} and {@link #decrypt} may be called
+ * concurrently from several threads, for example while decoding a large readAll in parallel.
+ * <p>
+ * Besides the array variants, which allocate their result, values can be encrypted into buffers
+ * owned by the caller, sized with {@link #getMaxEncryptedSize} and {@link #getMaxDecryptedSize}.
+ */
 public interface StorageCipher {
     byte[] encrypt(byte[] input) throws Exception;
 
     byte[] decrypt(byte[] input) throws Exception;
+
+    /**
+     * Encrypts {@code inputLength} bytes of {@code input} into {@code output} at {@code outputOffset}.
+     *
+     * @return the number of bytes written.
+     */
+    int encrypt(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws Exception;
+
+    /**
+     * Decrypts {@code inputLength} bytes of {@code input} into {@code output} at {@code outputOffset}.
+     *
+     * @return the number of bytes written.
+     */
+    int decrypt(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws Exception;
+
+    /**
+     * Encrypts the remaining bytes of {@code input} into {@code output}, advancing both positions.
+     *
+     * @return the number of bytes written.
+     */
+    int encrypt(ByteBuffer input, ByteBuffer output) throws Exception;
+
+    /**
+     * Decrypts the remaining bytes of {@code input} into {@code output}, advancing both positions.
+     *
+     * @return the number of bytes written.
+     */
+    int decrypt(ByteBuffer input, ByteBuffer output) throws Exception;
+
+    /**
+     * @return the most bytes encrypting {@code inputLength} bytes can produce.
+     */
+    int getMaxEncryptedSize(int inputLength);
+
+    /**
+     * @return the most bytes decrypting {@code inputLength} bytes can produce.
+     */
+    int getMaxDecryptedSize(int inputLength);
 }
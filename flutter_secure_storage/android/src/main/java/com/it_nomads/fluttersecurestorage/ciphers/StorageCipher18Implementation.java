@@ -5,19 +5,28 @@ import android.content.SharedPreferences;
 import android.util.Base64;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
 import java.security.Key;
 import java.security.SecureRandom;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * AES storage cipher. Safe for concurrent use: every operation borrows its own Cipher from a
+ * {@link CipherPool}, the key and {@link SecureRandom} are shared read-only.
+ */
 public class StorageCipher18Implementation implements StorageCipher {
     private static final int keySize = 16;
+    private static final int BLOCK_SIZE = 16;
+    private static final int CIPHER_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
     private static final String KEY_ALGORITHM = "AES";
     private static final String SHARED_PREFERENCES_NAME = "FlutterSecureKeyStorage";
-    private final Cipher cipher;
+    static final String AES_PREFERENCES_KEY = "VGhpcyBpcyB0aGUga2V5IGZvciBhIHNlY3VyZSBzdG9yYWdlIEFFUyBLZXkK";
+    private final CipherPool cipherPool;
     private final SecureRandom secureRandom;
     private Key secretKey;
 
@@ -30,7 +39,9 @@ public class StorageCipher18Implementation implements StorageCipher {
 
         String aesKey = preferences.getString(aesPreferencesKey, null);
 
-        cipher = getCipher();
+        cipherPool = new CipherPool(this::getCipher, CIPHER_POOL_SIZE);
+        // Fail early if the transformation is not available on this device.
+        cipherPool.release(cipherPool.acquire());
 
         if (aesKey != null) {
             byte[] encrypted;
@@ -53,7 +64,35 @@ public class StorageCipher18Implementation implements StorageCipher {
     }
 
     protected String getAESPreferencesKey() {
-        return "VGhpcyBpcyB0aGUga2V5IGZvciBhIHNlY3VyZSBzdG9yYWdlIEFFUyBLZXkK";
+        return AES_PREFERENCES_KEY;
+    }
+
+    /**
+     * Re-wraps the AES key stored under {@code aesPreferencesKey} with another key cipher. The AES key
+     * itself is unchanged, so values encrypted with it stay readable. Safe to repeat: a key already
+     * wrapped with {@code to} is left as is.
+     */
+    static void rewrapKey(Context context, String aesPreferencesKey, KeyCipher from, KeyCipher to) throws Exception {
+        SharedPreferences preferences = context.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+        String aesKey = preferences.getString(aesPreferencesKey, null);
+        if (aesKey == null) {
+            return;
+        }
+
+        byte[] encrypted = Base64.decode(aesKey, Base64.DEFAULT);
+        Key key;
+        try {
+            key = from.unwrap(encrypted, KEY_ALGORITHM);
+        } catch (Exception e) {
+            // Interrupted earlier after the key was stored, but before the algorithm was recorded.
+            to.unwrap(encrypted, KEY_ALGORITHM);
+            return;
+        }
+
+        byte[] rewrapped = to.wrap(key);
+        if (!preferences.edit().putString(aesPreferencesKey, Base64.encodeToString(rewrapped, Base64.DEFAULT)).commit()) {
+            throw new Exception("Could not store re-wrapped key");
+        }
     }
 
     protected Cipher getCipher() throws Exception {
@@ -62,43 +101,116 @@ public class StorageCipher18Implementation implements StorageCipher {
 
     @Override
     public byte[] encrypt(byte[] input) throws Exception {
-        byte[] iv = new byte[getIvSize()];
-        secureRandom.nextBytes(iv);
+        final byte[] output = new byte[getMaxEncryptedSize(input.length)];
+        final int length = encrypt(input, 0, input.length, output, 0);
+        return length == output.length ? output : Arrays.copyOf(output, length);
+    }
 
-        AlgorithmParameterSpec ivParameterSpec = getParameterSpec(iv);
+    @Override
+    public byte[] decrypt(byte[] input) throws Exception {
+        final byte[] output = new byte[getMaxDecryptedSize(input.length)];
+        final int length = decrypt(input, 0, input.length, output, 0);
+        return length == output.length ? output : Arrays.copyOf(output, length);
+    }
 
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
+    @Override
+    public int encrypt(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws Exception {
+        final int ivSize = getIvSize();
+        final byte[] iv = new byte[ivSize];
+        secureRandom.nextBytes(iv);
+        System.arraycopy(iv, 0, output, outputOffset, ivSize);
+
+        final Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, getParameterSpec(iv, 0, ivSize));
+            return ivSize + cipher.doFinal(input, inputOffset, inputLength, output, outputOffset + ivSize);
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
 
-        byte[] payload = cipher.doFinal(input);
-        byte[] combined = new byte[iv.length + payload.length];
+    @Override
+    public int decrypt(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset) throws Exception {
+        final int ivSize = getIvSize();
+        if (inputLength < ivSize) {
+            throw new IllegalArgumentException("Input is shorter than the IV");
+        }
 
-        System.arraycopy(iv, 0, combined, 0, iv.length);
-        System.arraycopy(payload, 0, combined, iv.length, payload.length);
+        final Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, getParameterSpec(input, inputOffset, ivSize));
+            return cipher.doFinal(input, inputOffset + ivSize, inputLength - ivSize, output, outputOffset);
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
 
-        return combined;
+    @Override
+    public int encrypt(ByteBuffer input, ByteBuffer output) throws Exception {
+        final int ivSize = getIvSize();
+        final byte[] iv = new byte[ivSize];
+        secureRandom.nextBytes(iv);
+        output.put(iv);
+
+        final Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, getParameterSpec(iv, 0, ivSize));
+            return ivSize + cipher.doFinal(input, output);
+        } finally {
+            cipherPool.release(cipher);
+        }
     }
 
     @Override
-    public byte[] decrypt(byte[] input) throws Exception {
-        byte[] iv = new byte[getIvSize()];
-        System.arraycopy(input, 0, iv, 0, iv.length);
-        AlgorithmParameterSpec ivParameterSpec = getParameterSpec(iv);
+    public int decrypt(ByteBuffer input, ByteBuffer output) throws Exception {
+        final int ivSize = getIvSize();
+        if (input.remaining() < ivSize) {
+            throw new IllegalArgumentException("Input is shorter than the IV");
+        }
 
-        int payloadSize = input.length - getIvSize();
-        byte[] payload = new byte[payloadSize];
-        System.arraycopy(input, iv.length, payload, 0, payloadSize);
+        final AlgorithmParameterSpec parameterSpec;
+        if (input.hasArray()) {
+            parameterSpec = getParameterSpec(input.array(), input.arrayOffset() + input.position(), ivSize);
+            input.position(input.position() + ivSize);
+        } else {
+            final byte[] iv = new byte[ivSize];
+            input.get(iv);
+            parameterSpec = getParameterSpec(iv, 0, ivSize);
+        }
 
-        cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+        final Cipher cipher = cipherPool.acquire();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, parameterSpec);
+            return cipher.doFinal(input, output);
+        } finally {
+            cipherPool.release(cipher);
+        }
+    }
+
+    @Override
+    public int getMaxEncryptedSize(int inputLength) {
+        // PKCS7 always adds padding, a full block for block-aligned input.
+        return getIvSize() + (inputLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    @Override
+    public int getMaxDecryptedSize(int inputLength) {
+        return Math.max(0, inputLength - getIvSize());
+    }
 
-        return cipher.doFinal(payload);
+    /**
+     * Usage statistics of the pooled ciphers, to measure contention under concurrent load.
+     */
+    public CipherPool getCipherPool() {
+        return cipherPool;
     }
 
     protected int getIvSize() {
         return 16;
     }
 
-    protected AlgorithmParameterSpec getParameterSpec(byte[] iv) {
-        return new IvParameterSpec(iv);
+    protected AlgorithmParameterSpec getParameterSpec(byte[] iv, int offset, int length) {
+        return new IvParameterSpec(iv, offset, length);
     }
 
 }
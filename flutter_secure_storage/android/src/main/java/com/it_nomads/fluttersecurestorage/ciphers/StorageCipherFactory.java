@@ -4,6 +4,8 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Build;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 
 enum KeyCipherAlgorithm {
@@ -19,16 +21,21 @@ enum KeyCipherAlgorithm {
     }
 }
 
+/**
+ * The ordinal identifies the algorithm in stored values, new algorithms must be added at the end.
+ */
 enum StorageCipherAlgorithm {
-    AES_CBC_PKCS7Padding(StorageCipher18Implementation::new, 1),
+    AES_CBC_PKCS7Padding(StorageCipher18Implementation::new, 1, StorageCipher18Implementation.AES_PREFERENCES_KEY),
     @SuppressWarnings({"UnusedDeclaration"})
-    AES_GCM_NoPadding(StorageCipherGCMImplementation::new, Build.VERSION_CODES.M);
+    AES_GCM_NoPadding(StorageCipherGCMImplementation::new, Build.VERSION_CODES.M, StorageCipherGCMImplementation.AES_PREFERENCES_KEY);
     final StorageCipherFunction storageCipher;
     final int minVersionCode;
+    final String aesPreferencesKey;
 
-    StorageCipherAlgorithm(StorageCipherFunction storageCipher, int minVersionCode) {
+    StorageCipherAlgorithm(StorageCipherFunction storageCipher, int minVersionCode, String aesPreferencesKey) {
         this.storageCipher = storageCipher;
         this.minVersionCode = minVersionCode;
+        this.aesPreferencesKey = aesPreferencesKey;
     }
 }
 
@@ -44,8 +51,8 @@ interface KeyCipherFunction {
 
 public class StorageCipherFactory {
     private static final String ELEMENT_PREFERENCES_ALGORITHM_PREFIX = "FlutterSecureSAlgorithm";
-    private static final String ELEMENT_PREFERENCES_ALGORITHM_KEY = ELEMENT_PREFERENCES_ALGORITHM_PREFIX + "Key";
-    private static final String ELEMENT_PREFERENCES_ALGORITHM_STORAGE = ELEMENT_PREFERENCES_ALGORITHM_PREFIX + "Storage";
+    public static final String ELEMENT_PREFERENCES_ALGORITHM_KEY = ELEMENT_PREFERENCES_ALGORITHM_PREFIX + "Key";
+    public static final String ELEMENT_PREFERENCES_ALGORITHM_STORAGE = ELEMENT_PREFERENCES_ALGORITHM_PREFIX + "Storage";
     private static final KeyCipherAlgorithm DEFAULT_KEY_ALGORITHM = KeyCipherAlgorithm.RSA_ECB_PKCS1Padding;
     private static final StorageCipherAlgorithm DEFAULT_STORAGE_ALGORITHM = StorageCipherAlgorithm.AES_CBC_PKCS7Padding;
 
@@ -53,15 +60,25 @@ public class StorageCipherFactory {
     private final StorageCipherAlgorithm savedStorageAlgorithm;
     private final KeyCipherAlgorithm currentKeyAlgorithm;
     private final StorageCipherAlgorithm currentStorageAlgorithm;
+    private KeyCipherAlgorithm activeKeyAlgorithm;
 
     public StorageCipherFactory(SharedPreferences source, Map<String, Object> options) {
-        savedKeyAlgorithm = KeyCipherAlgorithm.valueOf(source.getString(ELEMENT_PREFERENCES_ALGORITHM_KEY, DEFAULT_KEY_ALGORITHM.name()));
-        savedStorageAlgorithm = StorageCipherAlgorithm.valueOf(source.getString(ELEMENT_PREFERENCES_ALGORITHM_STORAGE, DEFAULT_STORAGE_ALGORITHM.name()));
+        this(source.getString(ELEMENT_PREFERENCES_ALGORITHM_KEY, null), source.getString(ELEMENT_PREFERENCES_ALGORITHM_STORAGE, null), options);
+    }
+
+    /**
+     * @param savedKeyAlgorithmName     the value stored under {@link #ELEMENT_PREFERENCES_ALGORITHM_KEY}, or null.
+     * @param savedStorageAlgorithmName the value stored under {@link #ELEMENT_PREFERENCES_ALGORITHM_STORAGE}, or null.
+     */
+    public StorageCipherFactory(String savedKeyAlgorithmName, String savedStorageAlgorithmName, Map<String, Object> options) {
+        savedKeyAlgorithm = KeyCipherAlgorithm.valueOf(savedKeyAlgorithmName != null ? savedKeyAlgorithmName : DEFAULT_KEY_ALGORITHM.name());
+        savedStorageAlgorithm = StorageCipherAlgorithm.valueOf(savedStorageAlgorithmName != null ? savedStorageAlgorithmName : DEFAULT_STORAGE_ALGORITHM.name());
 
         final KeyCipherAlgorithm currentKeyAlgorithmTmp = KeyCipherAlgorithm.valueOf(getFromOptionsWithDefault(options, "keyCipherAlgorithm", DEFAULT_KEY_ALGORITHM.name()));
         currentKeyAlgorithm = (currentKeyAlgorithmTmp.minVersionCode <= Build.VERSION.SDK_INT) ? currentKeyAlgorithmTmp : DEFAULT_KEY_ALGORITHM;
         final StorageCipherAlgorithm currentStorageAlgorithmTmp = StorageCipherAlgorithm.valueOf(getFromOptionsWithDefault(options, "storageCipherAlgorithm", DEFAULT_STORAGE_ALGORITHM.name()));
         currentStorageAlgorithm = (currentStorageAlgorithmTmp.minVersionCode <= Build.VERSION.SDK_INT) ? currentStorageAlgorithmTmp : DEFAULT_STORAGE_ALGORITHM;
+        activeKeyAlgorithm = savedKeyAlgorithm;
     }
 
     private String getFromOptionsWithDefault(Map<String, Object> options, String key, String defaultValue) {
@@ -73,6 +90,54 @@ public class StorageCipherFactory {
         return savedKeyAlgorithm != currentKeyAlgorithm || savedStorageAlgorithm != currentStorageAlgorithm;
     }
 
+    public boolean requiresKeyRewrap() {
+        return activeKeyAlgorithm != currentKeyAlgorithm;
+    }
+
+    /**
+     * Switches to the current key algorithm by re-wrapping the AES keys of the saved and current
+     * storage algorithms. Values do not need to be re-encrypted for this. The caller stores the new
+     * key algorithm from {@link #getCurrentKeyAlgorithm} afterwards.
+     */
+    public void rewrapKeys(Context context) throws Exception {
+        if (!requiresKeyRewrap()) {
+            return;
+        }
+        final KeyCipher from = activeKeyAlgorithm.keyCipher.apply(context);
+        final KeyCipher to = currentKeyAlgorithm.keyCipher.apply(context);
+        StorageCipher18Implementation.rewrapKey(context, savedStorageAlgorithm.aesPreferencesKey, from, to);
+        if (currentStorageAlgorithm != savedStorageAlgorithm) {
+            StorageCipher18Implementation.rewrapKey(context, currentStorageAlgorithm.aesPreferencesKey, from, to);
+        }
+        activeKeyAlgorithm = currentKeyAlgorithm;
+    }
+
+    /**
+     * Code of the storage algorithm new values are encrypted with.
+     */
+    public int getCurrentStorageAlgorithmCode() {
+        return currentStorageAlgorithm.ordinal();
+    }
+
+    /**
+     * Code of the storage algorithm that encrypted values without an algorithm tag.
+     */
+    public int getSavedStorageAlgorithmCode() {
+        return savedStorageAlgorithm.ordinal();
+    }
+
+    /**
+     * Creates the storage cipher for an algorithm code, using the active key algorithm.
+     */
+    public StorageCipher getStorageCipher(Context context, int algorithmCode) throws Exception {
+        final StorageCipherAlgorithm[] algorithms = StorageCipherAlgorithm.values();
+        if (algorithmCode < 0 || algorithmCode >= algorithms.length) {
+            throw new Exception("Unknown storage algorithm: " + algorithmCode);
+        }
+        final KeyCipher keyCipher = activeKeyAlgorithm.keyCipher.apply(context);
+        return algorithms[algorithmCode].storageCipher.apply(context, keyCipher);
+    }
+
     public StorageCipher getSavedStorageCipher(Context context) throws Exception {
         final KeyCipher keyCipher = savedKeyAlgorithm.keyCipher.apply(context);
         return savedStorageAlgorithm.storageCipher.apply(context, keyCipher);
@@ -83,9 +148,22 @@ public class StorageCipherFactory {
         return currentStorageAlgorithm.storageCipher.apply(context, keyCipher);
     }
 
-    public void storeCurrentAlgorithms(SharedPreferences.Editor editor) {
-        editor.putString(ELEMENT_PREFERENCES_ALGORITHM_KEY, currentKeyAlgorithm.name());
-        editor.putString(ELEMENT_PREFERENCES_ALGORITHM_STORAGE, currentStorageAlgorithm.name());
+    /**
+     * @return the entries recording the current storage algorithm and the key algorithm the AES key
+     * is wrapped with, which is still the saved one if re-wrapping failed.
+     */
+    public Map<String, String> getCurrentAlgorithms() {
+        final Map<String, String> algorithms = new HashMap<>();
+        algorithms.put(ELEMENT_PREFERENCES_ALGORITHM_KEY, activeKeyAlgorithm.name());
+        algorithms.put(ELEMENT_PREFERENCES_ALGORITHM_STORAGE, currentStorageAlgorithm.name());
+        return algorithms;
+    }
+
+    /**
+     * @return the entry recording the current key algorithm, to store after {@link #rewrapKeys}.
+     */
+    public Map<String, String> getCurrentKeyAlgorithm() {
+        return Collections.singletonMap(ELEMENT_PREFERENCES_ALGORITHM_KEY, currentKeyAlgorithm.name());
     }
 
     public void removeCurrentAlgorithms(SharedPreferences.Editor editor) {
@@ -13,6 +13,7 @@ import javax.crypto.spec.GCMParameterSpec;
 public class StorageCipherGCMImplementation extends StorageCipher18Implementation {
 
     private static final int AUTHENTICATION_TAG_SIZE = 128;
+    static final String AES_PREFERENCES_KEY = "VGhpcyBpcyB0aGUga2V5IGZvcihBIHNlY3XyZZBzdG9yYWdlIEFFUyBLZXkK";
 
     public StorageCipherGCMImplementation(Context context, KeyCipher keyCipher) throws Exception {
         super(context, keyCipher);
@@ -20,7 +21,7 @@ public class StorageCipherGCMImplementation extends StorageCipher18Implementatio
 
     @Override
     protected String getAESPreferencesKey() {
-        return "VGhpcyBpcyB0aGUga2V5IGZvcihBIHNlY3XyZZBzdG9yYWdlIEFFUyBLZXkK";
+        return AES_PREFERENCES_KEY;
     }
 
     @Override
@@ -34,8 +35,18 @@ public class StorageCipherGCMImplementation extends StorageCipher18Implementatio
 
     @RequiresApi(api = Build.VERSION_CODES.KITKAT)
     @Override
-    protected AlgorithmParameterSpec getParameterSpec(byte[] iv) {
-        return new GCMParameterSpec(AUTHENTICATION_TAG_SIZE, iv);
+    protected AlgorithmParameterSpec getParameterSpec(byte[] iv, int offset, int length) {
+        return new GCMParameterSpec(AUTHENTICATION_TAG_SIZE, iv, offset, length);
+    }
+
+    @Override
+    public int getMaxEncryptedSize(int inputLength) {
+        return getIvSize() + inputLength + AUTHENTICATION_TAG_SIZE / 8;
+    }
+
+    @Override
+    public int getMaxDecryptedSize(int inputLength) {
+        return Math.max(0, inputLength - getIvSize() - AUTHENTICATION_TAG_SIZE / 8);
     }
 
 }
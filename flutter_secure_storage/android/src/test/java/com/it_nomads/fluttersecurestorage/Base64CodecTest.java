@@ -0,0 +1,73 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+public class Base64CodecTest {
+
+    @Test
+    public void encodesLikeTheJdk() {
+        final Random random = new Random(42);
+        for (int length = 0; length < 64; length++) {
+            final byte[] input = new byte[length];
+            random.nextBytes(input);
+            final char[] output = new char[Base64Codec.getEncodedLength(length)];
+
+            final int written = Base64Codec.encode(input, 0, length, output);
+
+            assertEquals(Base64.getEncoder().encodeToString(input), new String(output, 0, written));
+        }
+    }
+
+    @Test
+    public void encodesRangeOfInput() {
+        final byte[] input = {9, 1, 2, 3, 9};
+        final char[] output = new char[Base64Codec.getEncodedLength(3)];
+
+        final int written = Base64Codec.encode(input, 1, 3, output);
+
+        assertEquals("AQID", new String(output, 0, written));
+    }
+
+    @Test
+    public void decodesWhatItEncodes() {
+        final Random random = new Random(7);
+        for (int length = 0; length < 64; length++) {
+            final byte[] input = new byte[length];
+            random.nextBytes(input);
+            final char[] encoded = Base64.getEncoder().encodeToString(input).toCharArray();
+
+            assertArrayEquals(input, decode(encoded));
+        }
+    }
+
+    @Test
+    public void skipsLineBreaks() {
+        // android.util.Base64 with the default flags breaks lines after 76 characters.
+        final byte[] input = new byte[100];
+        Arrays.fill(input, (byte) 0x5a);
+        final char[] encoded = Base64.getMimeEncoder().encodeToString(input).concat("\n").toCharArray();
+
+        assertArrayEquals(input, decode(encoded));
+    }
+
+    @Test
+    public void rejectsInvalidInput() {
+        assertEquals(-1, Base64Codec.decode("AA*A".toCharArray(), 4, new byte[3]));
+        assertEquals(-1, Base64Codec.decode("AA=A".toCharArray(), 4, new byte[3]));
+        assertEquals(-1, Base64Codec.decode("AAAAA".toCharArray(), 5, new byte[6]));
+        assertEquals(-1, Base64Codec.decode("AA\u00e9A".toCharArray(), 4, new byte[3]));
+    }
+
+    private static byte[] decode(char[] encoded) {
+        final byte[] output = new byte[Base64Codec.getMaxDecodedLength(encoded.length)];
+        final int length = Base64Codec.decode(encoded, encoded.length, output);
+        return Arrays.copyOf(output, length);
+    }
+}
@@ -0,0 +1,96 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BulkResponseCodecTest {
+
+    @Test
+    public void supportsBulkMethodsOnly() {
+        assertTrue(BulkResponseCodec.supports("readAll"));
+        assertTrue(BulkResponseCodec.supports("batch"));
+        assertFalse(BulkResponseCodec.supports("read"));
+    }
+
+    @Test
+    public void encodesMap() {
+        final Map<String, String> map = new LinkedHashMap<>();
+        map.put("key", "value");
+        map.put("null", null);
+        map.put("\u00e9\u20ac\ud83d\ude00", "\ud800");
+
+        final ByteBuffer buffer = BulkResponseCodec.encodeSuccess(map);
+
+        assertEquals(BulkResponseCodec.SUCCESS, buffer.get());
+        assertEquals(BulkResponseCodec.TYPE_MAP, buffer.get());
+        final int count = buffer.getInt();
+        final Map<String, String> decoded = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            decoded.put(getString(buffer), getString(buffer));
+        }
+        assertFalse(buffer.hasRemaining());
+        final Map<String, String> expected = new HashMap<>(map);
+        // Unpaired surrogates are sent as '?', like String.getBytes does.
+        expected.put("\u00e9\u20ac\ud83d\ude00", "?");
+        assertEquals(expected, decoded);
+    }
+
+    @Test
+    public void encodesBooleanList() {
+        final ByteBuffer buffer = BulkResponseCodec.encodeSuccess(Arrays.asList(true, false, true));
+
+        assertEquals(BulkResponseCodec.SUCCESS, buffer.get());
+        assertEquals(BulkResponseCodec.TYPE_BOOLEAN_LIST, buffer.get());
+        assertEquals(3, buffer.getInt());
+        assertEquals(1, buffer.get());
+        assertEquals(0, buffer.get());
+        assertEquals(1, buffer.get());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void encodesString() {
+        final ByteBuffer buffer = BulkResponseCodec.encodeSuccess("Data has been reset");
+
+        assertEquals(BulkResponseCodec.SUCCESS, buffer.get());
+        assertEquals(BulkResponseCodec.TYPE_STRING, buffer.get());
+        assertEquals("Data has been reset", getString(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void encodesError() {
+        final ByteBuffer buffer = BulkResponseCodec.encodeError("Exception encountered", null);
+
+        assertEquals(BulkResponseCodec.ERROR, buffer.get());
+        assertEquals("Exception encountered", getString(buffer));
+        assertNull(getString(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherResults() {
+        BulkResponseCodec.encodeSuccess(1);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class EncryptedPreferencesValueTest {
+
+    @Test
+    public void stringsAreStoredAsTheyAre() {
+        assertSame("abcd1234", EncryptedPreferencesValue.encodeString("abcd1234"));
+        assertSame("", EncryptedPreferencesValue.encodeString(""));
+        assertEquals("abcd1234", EncryptedPreferencesValue.decodeString("abcd1234"));
+        assertNull(EncryptedPreferencesValue.decodeString(null));
+    }
+
+    @Test
+    public void base64StringsStayStrings() {
+        // Valid Base64, but written as a string.
+        assertArrayEquals("test".getBytes(StandardCharsets.UTF_8),
+                EncryptedPreferencesValue.decodeBytes(EncryptedPreferencesValue.encodeString("test"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        final String stored = EncryptedPreferencesValue.encodeBytes("AAEC/w==");
+
+        assertArrayEquals(new byte[]{0, 1, 2, -1}, EncryptedPreferencesValue.decodeBytes(stored, StandardCharsets.UTF_8));
+        assertEquals("AAEC/w==", EncryptedPreferencesValue.decodeString(stored));
+    }
+
+    @Test
+    public void stringsStartingWithTheMarkerAreEscaped() {
+        for (String value : new String[]{"\uE000", "\uE000b", "\uE000bAAEC", "\uE000s", "\uE000x"}) {
+            final String stored = EncryptedPreferencesValue.encodeString(value);
+
+            assertEquals(value, EncryptedPreferencesValue.decodeString(stored));
+            assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), EncryptedPreferencesValue.decodeBytes(stored, StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class InMemoryStorageBackendTest {
+
+    private final StorageBackend backend = new InMemoryStorageBackend();
+
+    @Test
+    public void readsWhatWasWritten() {
+        assertTrue(backend.edit().put("a", "1").put("b", "2").commit(true));
+
+        assertEquals("1", backend.get("a"));
+        assertTrue(backend.contains("b"));
+        assertFalse(backend.contains("c"));
+        assertNull(backend.get("c"));
+    }
+
+    @Test
+    public void appliesBatchInOrder() {
+        backend.edit().put("a", "1").commit(false);
+
+        backend.edit().remove("a").put("a", "2").put("b", "1").remove("b").put("c", null).commit(false);
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("a", "2");
+        assertEquals(expected, backend.getAll());
+    }
+
+    @Test
+    public void appliesClearFirst() {
+        backend.edit().put("a", "1").put("b", "2").commit(true);
+
+        backend.edit().put("c", "3").clear().commit(true);
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("c", "3");
+        assertEquals(expected, backend.getAll());
+    }
+
+    @Test
+    public void uncommittedBatchIsNotVisible() {
+        final StorageBackend.Batch batch = backend.edit().put("a", "1");
+
+        assertFalse(backend.contains("a"));
+        batch.commit(true);
+        assertTrue(backend.contains("a"));
+    }
+
+    @Test
+    public void getAllReturnsSnapshot() {
+        backend.edit().put("a", "1").commit(true);
+
+        final Map<String, String> all = backend.getAll();
+        all.put("b", "2");
+        backend.edit().put("c", "3").commit(true);
+
+        assertFalse(backend.contains("b"));
+        assertFalse(all.containsKey("c"));
+    }
+}
@@ -0,0 +1,176 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LogStorageBackendTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private LogStorageBackend log;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "test.log");
+        log = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+    }
+
+    @Test
+    public void replaysRecordsOnOpen() throws IOException {
+        log.edit().put("a", "1").put("b", "2").commit(true);
+        log.edit().remove("a").put("c", "3").commit(false);
+        log.edit().put("b", "4").clear().commit(true);
+
+        reopen();
+
+        assertEquals(map("b", "4"), log.getAll());
+    }
+
+    @Test
+    public void truncatesTornTail() throws IOException {
+        log.edit().put("a", "1").commit(true);
+        final long validLength = file.length();
+        log.edit().put("b", "2").commit(true);
+        log.close();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(output.length() - 2);
+        }
+
+        log = open();
+
+        assertEquals(map("a", "1"), log.getAll());
+        assertEquals(validLength, file.length());
+        // Records appended after the truncation are replayed again.
+        log.edit().put("c", "3").commit(true);
+        reopen();
+        assertTrue(log.contains("c"));
+    }
+
+    @Test
+    public void discardsRecordFailingCrc() throws IOException {
+        log.edit().put("a", "1").commit(true);
+        final long validLength = file.length();
+        log.edit().put("b", "2").commit(true);
+        log.close();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(output.length() - 1);
+            final int last = output.read();
+            output.seek(output.length() - 1);
+            output.write(last ^ 0xff);
+        }
+
+        log = open();
+
+        assertEquals(map("a", "1"), log.getAll());
+        assertEquals(validLength, file.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownFormat() throws IOException {
+        log.close();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(0);
+            output.write("<xml".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        log = open();
+    }
+
+    @Test
+    public void compactionKeepsLiveEntries() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            log.edit().put("a", "value" + i).commit(false);
+        }
+        log.edit().put("b", "1").remove("missing").commit(true);
+        final long uncompactedLength = 200L * 24;
+
+        log.compact();
+
+        assertTrue(file.length() < uncompactedLength / 10);
+        final Map<String, String> expected = map("a", "value199");
+        expected.put("b", "1");
+        assertEquals(expected, log.getAll());
+        log.edit().put("c", "2").commit(true);
+        reopen();
+        expected.put("c", "2");
+        assertEquals(expected, log.getAll());
+    }
+
+    @Test
+    public void failedAppendDoesNotHideLaterRecords() throws IOException {
+        log.close();
+        final boolean[] fail = {false};
+        log = new LogStorageBackend(file, StandardCharsets.UTF_8) {
+            @Override
+            void append(ByteBuffer record) throws IOException {
+                if (!fail[0]) {
+                    super.append(record);
+                    return;
+                }
+                fail[0] = false;
+                record.limit(record.position() + record.remaining() / 2);
+                super.append(record);
+                throw new IOException("disk full");
+            }
+        };
+        log.edit().put("a", "1").commit(true);
+        final long validLength = file.length();
+
+        fail[0] = true;
+        assertFalse(log.edit().put("b", "2").commit(true));
+        assertEquals(validLength, file.length());
+        assertTrue(log.edit().put("c", "3").commit(true));
+
+        reopen();
+        final Map<String, String> expected = map("a", "1");
+        expected.put("c", "3");
+        assertEquals(expected, log.getAll());
+    }
+
+    @Test
+    public void deleteRemovesFile() throws IOException {
+        log.edit().put("a", "1").commit(true);
+
+        log.delete();
+
+        assertFalse(file.exists());
+        assertFalse(log.edit().put("b", "2").commit(true));
+    }
+
+    private LogStorageBackend open() throws IOException {
+        return new LogStorageBackend(file, StandardCharsets.UTF_8);
+    }
+
+    private void reopen() throws IOException {
+        log.close();
+        log = open();
+    }
+
+    private static Map<String, String> map(String key, String value) {
+        final Map<String, String> map = new HashMap<>();
+        map.put(key, value);
+        return map;
+    }
+}
@@ -0,0 +1,151 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StorageExecutorTest {
+
+    private final StorageExecutor executor = new StorageExecutor(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void busyStoreDoesNotHoldOtherThreads() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", StorageExecutor.Access.WRITE, () -> await(release));
+        for (int i = 0; i < 4; i++) {
+            executor.execute("a", StorageExecutor.Access.WRITE, () -> {
+            });
+        }
+
+        executor.execute("b", StorageExecutor.Access.WRITE, done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void readsOfAStoreRunConcurrently() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            executor.execute("a", StorageExecutor.Access.READ, () -> {
+                try {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    done.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tasksOfAStoreStartInOrderAndWritesRunAlone() throws Exception {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunningWithWrite = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(6);
+        final StorageExecutor.Access[] accesses = {
+                StorageExecutor.Access.READ, StorageExecutor.Access.READ, StorageExecutor.Access.WRITE,
+                StorageExecutor.Access.READ, StorageExecutor.Access.WRITE, StorageExecutor.Access.READ,
+        };
+        for (int i = 0; i < accesses.length; i++) {
+            final String name = accesses[i].name() + i;
+            final boolean write = accesses[i] == StorageExecutor.Access.WRITE;
+            executor.execute("a", accesses[i], () -> {
+                final int concurrent = running.incrementAndGet();
+                if (write) {
+                    maxRunningWithWrite.set(Math.max(maxRunningWithWrite.get(), concurrent));
+                }
+                events.add(name);
+                sleep();
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunningWithWrite.get());
+        assertEquals("WRITE2", events.get(2));
+        assertEquals("READ3", events.get(3));
+        assertEquals("WRITE4", events.get(4));
+    }
+
+    @Test
+    public void failingTaskReleasesItsStore() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", StorageExecutor.Access.WRITE, () -> {
+            throw new IllegalStateException("expected");
+        });
+
+        executor.execute("a", StorageExecutor.Access.WRITE, done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(executor.getQueueDepth() > 0);
+    }
+
+    @Test
+    public void tasksWaitingAtShutdownStillRun() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        executor.execute("a", StorageExecutor.Access.WRITE, () -> {
+            await(release);
+            // Submitted by a running task after shutdown, like a reset after an error.
+            executor.execute("a", StorageExecutor.Access.WRITE, done::countDown);
+            done.countDown();
+        });
+        executor.execute("a", StorageExecutor.Access.WRITE, done::countDown);
+        executor.execute("a", StorageExecutor.Access.READ, done::countDown);
+
+        executor.shutdown();
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void taskSubmittedOnceStoppedIsDropped() {
+        executor.shutdown();
+
+        executor.execute("a", StorageExecutor.Access.WRITE, () -> {
+            throw new AssertionError("ran after shutdown");
+        });
+
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
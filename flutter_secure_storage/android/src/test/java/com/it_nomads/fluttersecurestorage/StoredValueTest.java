@@ -0,0 +1,56 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StoredValueTest {
+
+    @Test
+    public void encodeIfNeededKeepsPlainValues() {
+        assertSame("AAEC", StoredValue.encodeIfNeeded(0, StoredValue.NO_ALGORITHM, "AAEC"));
+    }
+
+    @Test
+    public void parsesFlagsWithoutAlgorithm() {
+        final String raw = StoredValue.encodeIfNeeded(StoredValue.FLAG_BINARY | StoredValue.FLAG_COMPRESSED, StoredValue.NO_ALGORITHM, "AAEC");
+        final StoredValue value = StoredValue.parse(raw);
+
+        assertEquals(StoredValue.FLAG_BINARY | StoredValue.FLAG_COMPRESSED, value.flags);
+        assertEquals(StoredValue.NO_ALGORITHM, value.algorithm);
+        assertEquals("AAEC", value.payload);
+        assertTrue(value.hasFlag(StoredValue.FLAG_BINARY));
+        assertFalse(value.hasFlag(StoredValue.FLAG_FILE));
+    }
+
+    @Test
+    public void parsesAlgorithmCode() {
+        final StoredValue value = StoredValue.parse(StoredValue.encode(StoredValue.FLAG_FILE, 1, "file-name"));
+
+        assertEquals(StoredValue.FLAG_FILE, value.flags);
+        assertEquals(1, value.algorithm);
+        assertEquals("file-name", value.payload);
+    }
+
+    @Test
+    public void keepsEmptyPayload() {
+        assertEquals("", StoredValue.parse(StoredValue.encode(0, 0, "")).payload);
+    }
+
+    @Test
+    public void plainBase64HasNoHeader() {
+        assertNull(StoredValue.parse("AAECAwQ="));
+        assertNull(StoredValue.parse(null));
+        assertNull(StoredValue.parse("!"));
+    }
+
+    @Test
+    public void malformedHeaderIsNotParsed() {
+        assertNull(StoredValue.parse("!x:AAEC"));
+        assertNull(StoredValue.parse("!11AAEC"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.it_nomads.fluttersecurestorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class ValueCompressionTest {
+
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+
+    @Test
+    public void roundTrip() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"value\"}");
+        }
+        final byte[] input = builder.toString().getBytes(StandardCharsets.UTF_8);
+        final byte[] compressed = new byte[input.length];
+
+        final int compressedLength = ValueCompression.deflate(deflater, input, input.length, compressed);
+        assertTrue(compressedLength > 0 && compressedLength < input.length);
+
+        final int inflatedLength = ValueCompression.getInflatedLength(compressed, compressedLength);
+        assertEquals(input.length, inflatedLength);
+        final byte[] output = new byte[inflatedLength];
+        ValueCompression.inflate(inflater, compressed, compressedLength, output, inflatedLength);
+        assertArrayEquals(input, output);
+    }
+
+    @Test
+    public void skipsIncompressibleValues() {
+        final byte[] input = new byte[256];
+        new Random(1).nextBytes(input);
+
+        assertEquals(-1, ValueCompression.deflate(deflater, input, input.length, new byte[input.length]));
+        assertEquals(-1, ValueCompression.deflate(deflater, input, 4, new byte[4]));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsImpossibleLength() throws IOException {
+        ValueCompression.getInflatedLength(new byte[]{0x7f, 0, 0, 0, 0, 0}, 6);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCorruptStream() throws IOException {
+        final byte[] input = {0, 0, 0, 8, 1, 2, 3, 4};
+        ValueCompression.inflate(inflater, input, input.length, new byte[8], 8);
+    }
+}
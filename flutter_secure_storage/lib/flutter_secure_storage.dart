@@ -1,12 +1,20 @@
 library flutter_secure_storage;
 
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter_secure_storage/test/test_flutter_secure_storage_platform.dart';
 import 'package:flutter_secure_storage_platform_interface/flutter_secure_storage_platform_interface.dart';
 
+export 'package:flutter_secure_storage_platform_interface/flutter_secure_storage_platform_interface.dart'
+    show
+        SecureStorageBatchOperation,
+        SecureStorageChange,
+        SecureStorageChangeType,
+        SecureStorageDurability;
+
 part './options/android_options.dart';
 part './options/apple_options.dart';
 part './options/ios_options.dart';
@@ -235,6 +243,188 @@ class FlutterSecureStorage {
         ),
       );
 
+  /// Android only feature
+  ///
+  /// Applies [operations] in order in a single commit, so either all or none
+  /// of them are stored. Returns for each operation whether its key had a
+  /// value before it was applied.
+  ///
+  /// [operations] writes and deletes, applied in order
+  /// [durability] optional, when the changes are stored on disk
+  /// [iOptions] optional iOS options
+  /// [aOptions] optional Android options
+  /// [lOptions] optional Linux options
+  /// [webOptions] optional web options
+  /// [mOptions] optional MacOs options
+  /// [wOptions] optional Windows options
+  /// Can throw a [PlatformException].
+  Future<List<bool>> batch({
+    required List<SecureStorageBatchOperation> operations,
+    SecureStorageDurability? durability,
+    IOSOptions? iOptions,
+    AndroidOptions? aOptions,
+    LinuxOptions? lOptions,
+    WebOptions? webOptions,
+    MacOsOptions? mOptions,
+    WindowsOptions? wOptions,
+  }) =>
+      _platform.batch(
+        operations: operations,
+        durability: durability,
+        options: _selectOptions(
+          iOptions,
+          aOptions,
+          lOptions,
+          webOptions,
+          mOptions,
+          wOptions,
+        ),
+      );
+
+  /// Android only feature
+  ///
+  /// Encrypts and saves the [key] with the given bytes, without converting
+  /// them to a string first.
+  ///
+  /// [key] shouldn't be null.
+  /// [value] required value
+  /// [durability] optional, when the change is stored on disk
+  /// [iOptions] optional iOS options
+  /// [aOptions] optional Android options
+  /// [lOptions] optional Linux options
+  /// [webOptions] optional web options
+  /// [mOptions] optional MacOs options
+  /// [wOptions] optional Windows options
+  /// Can throw a [PlatformException].
+  Future<void> writeBytes({
+    required String key,
+    required Uint8List value,
+    SecureStorageDurability? durability,
+    IOSOptions? iOptions,
+    AndroidOptions? aOptions,
+    LinuxOptions? lOptions,
+    WebOptions? webOptions,
+    MacOsOptions? mOptions,
+    WindowsOptions? wOptions,
+  }) =>
+      _platform.writeBytes(
+        key: key,
+        value: value,
+        durability: durability,
+        options: _selectOptions(
+          iOptions,
+          aOptions,
+          lOptions,
+          webOptions,
+          mOptions,
+          wOptions,
+        ),
+      );
+
+  /// Android only feature
+  ///
+  /// Decrypts and returns the bytes for the given [key] or null if [key] is
+  /// not in the storage. Values written as strings are returned UTF-8 encoded.
+  ///
+  /// [key] shouldn't be null.
+  /// [iOptions] optional iOS options
+  /// [aOptions] optional Android options
+  /// [lOptions] optional Linux options
+  /// [webOptions] optional web options
+  /// [mOptions] optional MacOs options
+  /// [wOptions] optional Windows options
+  /// Can throw a [PlatformException].
+  Future<Uint8List?> readBytes({
+    required String key,
+    IOSOptions? iOptions,
+    AndroidOptions? aOptions,
+    LinuxOptions? lOptions,
+    WebOptions? webOptions,
+    MacOsOptions? mOptions,
+    WindowsOptions? wOptions,
+  }) =>
+      _platform.readBytes(
+        key: key,
+        options: _selectOptions(
+          iOptions,
+          aOptions,
+          lOptions,
+          webOptions,
+          mOptions,
+          wOptions,
+        ),
+      );
+
+  /// Returns the sorted keys of the storage, limited to keys starting with
+  /// [prefix] when given. On Android the values are not decrypted, on other
+  /// platforms the keys are taken from [readAll].
+  ///
+  /// [prefix] optional key prefix
+  /// [iOptions] optional iOS options
+  /// [aOptions] optional Android options
+  /// [lOptions] optional Linux options
+  /// [webOptions] optional web options
+  /// [mOptions] optional MacOs options
+  /// [wOptions] optional Windows options
+  /// Can throw a [PlatformException].
+  Future<List<String>> keys({
+    String? prefix,
+    IOSOptions? iOptions,
+    AndroidOptions? aOptions,
+    LinuxOptions? lOptions,
+    WebOptions? webOptions,
+    MacOsOptions? mOptions,
+    WindowsOptions? wOptions,
+  }) =>
+      _platform.keys(
+        prefix: prefix,
+        options: _selectOptions(
+          iOptions,
+          aOptions,
+          lOptions,
+          webOptions,
+          mOptions,
+          wOptions,
+        ),
+      );
+
+  /// Android only feature
+  ///
+  /// Stores the changes made with [SecureStorageDurability.buffered]. With the
+  /// default [SecureStorageDurability.commit], completes once they and all
+  /// earlier changes are on disk.
+  ///
+  /// On all unsupported platforms completes right away
+  ///
+  /// [durability] optional, when the changes are stored on disk
+  /// [iOptions] optional iOS options
+  /// [aOptions] optional Android options
+  /// [lOptions] optional Linux options
+  /// [webOptions] optional web options
+  /// [mOptions] optional MacOs options
+  /// [wOptions] optional Windows options
+  /// Can throw a [PlatformException].
+  Future<void> flush({
+    SecureStorageDurability? durability,
+    IOSOptions? iOptions,
+    AndroidOptions? aOptions,
+    LinuxOptions? lOptions,
+    WebOptions? webOptions,
+    MacOsOptions? mOptions,
+    WindowsOptions? wOptions,
+  }) =>
+      _platform.flush(
+        durability: durability,
+        options: _selectOptions(
+          iOptions,
+          aOptions,
+          lOptions,
+          webOptions,
+          mOptions,
+          wOptions,
+        ),
+      );
+
   /// Select correct options based on current platform
   Map<String, String> _selectOptions(
     IOSOptions? iOptions,
@@ -267,6 +457,70 @@ class FlutterSecureStorage {
   Stream<bool> get onCupertinoProtectedDataAvailabilityChanged =>
       _platform.onCupertinoProtectedDataAvailabilityChanged;
 
+  /// Android only feature
+  ///
+  /// Emits the changes of the storage once they are committed, limited to keys
+  /// starting with [prefix] when given. Clear and migration changes are always
+  /// emitted. Any number of streams may be listened to at the same time.
+  ///
+  /// On all unsupported platforms returns an empty stream
+  Stream<SecureStorageChange> onStorageChanged({String? prefix}) =>
+      _platform.onStorageChanged(prefix: prefix);
+
+  /// Android only feature
+  ///
+  /// Returns whether the storage is initialized, so the next call does not
+  /// wait for key generation or unwrapping. Storages are initialized by their
+  /// first call, or in the background at startup when
+  /// [AndroidOptions.prewarm] is set.
+  ///
+  /// On all unsupported platforms returns true
+  ///
+  /// [iOptions] optional iOS options
+  /// [aOptions] optional Android options
+  /// [lOptions] optional Linux options
+  /// [webOptions] optional web options
+  /// [mOptions] optional MacOs options
+  /// [wOptions] optional Windows options
+  Future<bool> isReady({
+    IOSOptions? iOptions,
+    AndroidOptions? aOptions,
+    LinuxOptions? lOptions,
+    WebOptions? webOptions,
+    MacOsOptions? mOptions,
+    WindowsOptions? wOptions,
+  }) =>
+      _platform.isReady(
+        options: _selectOptions(
+          iOptions,
+          aOptions,
+          lOptions,
+          webOptions,
+          mOptions,
+          wOptions,
+        ),
+      );
+
+  /// Android only feature
+  ///
+  /// Returns the per-method latency histograms and throughput recorded since
+  /// metrics were enabled or last reset, along with executor, cache, cipher
+  /// pool and migration statistics.
+  ///
+  /// On all unsupported platforms returns an empty map
+  Future<Map<String, Object?>> getMetrics() => _platform.getMetrics();
+
+  /// Android only feature
+  ///
+  /// Clears the recorded metrics.
+  Future<void> resetMetrics() => _platform.resetMetrics();
+
+  /// Android only feature
+  ///
+  /// Turns recording of metrics on or off. Metrics are off by default.
+  Future<void> setMetricsEnabled(bool enabled) =>
+      _platform.setMetricsEnabled(enabled);
+
   /// iOS and macOS only feature.
   ///
   /// On macOS this is only avaible on macOS 12 or newer. On older versions always returns true.
@@ -10,6 +10,17 @@ enum StorageCipherAlgorithm {
   AES_GCM_NoPadding,
 }
 
+/// Where values encrypted by the plugin are stored.
+enum AndroidStorageBackend {
+  /// A SharedPreferences XML file, rewritten on every change.
+  sharedPreferences,
+
+  /// An append-only log that only writes the changed entries and is compacted
+  /// in the background. Entries are moved back into the XML file once another
+  /// backend or encryptedSharedPreferences is selected.
+  log,
+}
+
 class AndroidOptions extends Options {
   const AndroidOptions({
     bool encryptedSharedPreferences = false,
@@ -20,6 +31,12 @@ class AndroidOptions extends Options {
         StorageCipherAlgorithm.AES_CBC_PKCS7Padding,
     this.sharedPreferencesName,
     this.preferencesKeyPrefix,
+    this.cacheSize = 0,
+    this.largeValueThreshold = 0,
+    this.compressionThreshold = 0,
+    this.shardCount = 0,
+    this.storageBackend = AndroidStorageBackend.sharedPreferences,
+    this.prewarm = false,
   })  : _encryptedSharedPreferences = encryptedSharedPreferences,
         _resetOnError = resetOnError,
         _keyCipherAlgorithm = keyCipherAlgorithm,
@@ -63,6 +80,53 @@ class AndroidOptions extends Options {
   /// WARNING: If you change this you can't retrieve already saved preferences.
   final String? preferencesKeyPrefix;
 
+  /// Maximum number of decrypted values kept in memory on the native side.
+  /// Repeated reads of a cached key skip decryption entirely. The cache is
+  /// kept consistent with writes and deletes made through this plugin.
+  ///
+  /// Defaults to 0, which disables the cache.
+  final int cacheSize;
+
+  /// Values larger than this many bytes are encrypted into separate files
+  /// instead of being stored inside the shared preferences file, which keeps
+  /// that file small and fast to rewrite. Only used when
+  /// encryptedSharedPreferences is disabled.
+  ///
+  /// Defaults to 0, which stores every value in shared preferences.
+  final int largeValueThreshold;
+
+  /// Values larger than this many bytes are compressed with Deflate before
+  /// they are encrypted, if that makes them smaller. Useful for large JSON
+  /// values. Only used when encryptedSharedPreferences is disabled.
+  ///
+  /// Defaults to 0, which disables compression.
+  final int compressionThreshold;
+
+  /// Number of preference files values are spread over, by a hash of their
+  /// key. Each write then only rewrites the file holding the changed key,
+  /// which keeps writes fast in stores with many entries. Existing values are
+  /// moved when the count changes. Only used when encryptedSharedPreferences
+  /// is disabled and [storageBackend] is
+  /// [AndroidStorageBackend.sharedPreferences].
+  ///
+  /// Defaults to 0, which keeps every value in a single file.
+  final int shardCount;
+
+  /// Storage engine for values when encryptedSharedPreferences is disabled.
+  /// Existing values are moved to the selected backend on first use.
+  ///
+  /// Defaults to [AndroidStorageBackend.sharedPreferences].
+  final AndroidStorageBackend storageBackend;
+
+  /// Initializes the storage for these options in the background as soon as
+  /// the plugin is attached, on every launch after the first call made with
+  /// this flag. Key generation and unwrapping then happen before the first
+  /// read instead of during it. Options not used with this flag for 30 days
+  /// are no longer prewarmed.
+  ///
+  /// Defaults to false.
+  final bool prewarm;
+
   static const AndroidOptions defaultOptions = AndroidOptions();
 
   @override
@@ -73,6 +137,12 @@ class AndroidOptions extends Options {
         'storageCipherAlgorithm': describeEnum(_storageCipherAlgorithm),
         'sharedPreferencesName': sharedPreferencesName ?? '',
         'preferencesKeyPrefix': preferencesKeyPrefix ?? '',
+        'cacheSize': '$cacheSize',
+        'largeValueThreshold': '$largeValueThreshold',
+        'compressionThreshold': '$compressionThreshold',
+        'shardCount': '$shardCount',
+        'storageBackend': describeEnum(storageBackend),
+        'prewarm': '$prewarm',
       };
 
   AndroidOptions copyWith({
@@ -82,6 +152,12 @@ class AndroidOptions extends Options {
     StorageCipherAlgorithm? storageCipherAlgorithm,
     String? preferencesKeyPrefix,
     String? sharedPreferencesName,
+    int? cacheSize,
+    int? largeValueThreshold,
+    int? compressionThreshold,
+    int? shardCount,
+    AndroidStorageBackend? storageBackend,
+    bool? prewarm,
   }) =>
       AndroidOptions(
         encryptedSharedPreferences:
@@ -92,5 +168,11 @@ class AndroidOptions extends Options {
             storageCipherAlgorithm ?? _storageCipherAlgorithm,
         sharedPreferencesName: sharedPreferencesName,
         preferencesKeyPrefix: preferencesKeyPrefix,
+        cacheSize: cacheSize ?? this.cacheSize,
+        largeValueThreshold: largeValueThreshold ?? this.largeValueThreshold,
+        compressionThreshold: compressionThreshold ?? this.compressionThreshold,
+        shardCount: shardCount ?? this.shardCount,
+        storageBackend: storageBackend ?? this.storageBackend,
+        prewarm: prewarm ?? this.prewarm,
       );
 }
@@ -44,6 +44,22 @@ class TestFlutterSecureStoragePlatform extends FlutterSecureStoragePlatform {
   }) async =>
       data[key] = value;
 
+  @override
+  Future<List<bool>> batch({
+    required List<SecureStorageBatchOperation> operations,
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) async =>
+      operations.map((operation) {
+        final existed = data.containsKey(operation.key);
+        if (operation.isDelete) {
+          data.remove(operation.key);
+        } else {
+          data[operation.key] = operation.value!;
+        }
+        return existed;
+      }).toList();
+
   @override
   Future<bool> isCupertinoProtectedDataAvailable() => Future.value(true);
 
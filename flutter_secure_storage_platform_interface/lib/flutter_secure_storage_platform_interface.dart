@@ -1,13 +1,19 @@
 library flutter_secure_storage_platform_interface;
 
+import 'dart:convert';
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:plugin_platform_interface/plugin_platform_interface.dart';
 
+part './src/batch_operation.dart';
+part './src/bulk_response_codec.dart';
+part './src/durability.dart';
 part './src/method_channel_flutter_secure_storage.dart';
 part './src/options.dart';
+part './src/storage_change.dart';
 
 /// The interface that implementations of flutter_secure_storage must implement.
 ///
@@ -33,6 +39,13 @@ abstract class FlutterSecureStoragePlatform extends PlatformInterface {
 
   Stream<bool> get onCupertinoProtectedDataAvailabilityChanged;
 
+  /// Emits the committed changes of the storage, limited to keys starting
+  /// with [prefix] when given. Clear and migration changes are always emitted.
+  ///
+  /// Platforms that do not report changes return an empty stream.
+  Stream<SecureStorageChange> onStorageChanged({String? prefix}) =>
+      const Stream.empty();
+
   Future<bool> isCupertinoProtectedDataAvailable();
 
   Future<void> write({
@@ -63,4 +76,88 @@ abstract class FlutterSecureStoragePlatform extends PlatformInterface {
   Future<void> deleteAll({
     required Map<String, String> options,
   });
+
+  /// Applies [operations] in order as one change of the storage, and returns
+  /// for each operation whether its key had a value before it was applied.
+  /// [durability] defaults to [SecureStorageDurability.apply].
+  ///
+  /// Platforms that cannot apply several changes at once throw an
+  /// [UnsupportedError].
+  Future<List<bool>> batch({
+    required List<SecureStorageBatchOperation> operations,
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) =>
+      throw UnsupportedError('batch() has not been implemented.');
+
+  /// Stores [value] for [key] as bytes, without converting it to a string.
+  /// [durability] defaults to [SecureStorageDurability.apply].
+  ///
+  /// Platforms without binary values throw an [UnsupportedError].
+  Future<void> writeBytes({
+    required String key,
+    required Uint8List value,
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) =>
+      throw UnsupportedError('writeBytes() has not been implemented.');
+
+  /// Returns the value of [key] as bytes, or null if [key] is not in the
+  /// storage. Values written as strings are returned UTF-8 encoded.
+  ///
+  /// Platforms without binary values throw an [UnsupportedError].
+  Future<Uint8List?> readBytes({
+    required String key,
+    required Map<String, String> options,
+  }) =>
+      throw UnsupportedError('readBytes() has not been implemented.');
+
+  /// Returns the sorted keys of the storage, limited to keys starting with
+  /// [prefix] when given.
+  ///
+  /// Defaults to the keys of [readAll]; platforms that can list keys without
+  /// decrypting the values override this.
+  Future<List<String>> keys({
+    required Map<String, String> options,
+    String? prefix,
+  }) async {
+    final keys = (await readAll(options: options))
+        .keys
+        .where((key) => prefix == null || key.startsWith(prefix))
+        .toList();
+    keys.sort();
+    return keys;
+  }
+
+  /// Stores the buffered changes of the storage with [durability], which
+  /// defaults to [SecureStorageDurability.commit].
+  ///
+  /// Platforms that store every change right away have nothing to flush.
+  Future<void> flush({
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) =>
+      Future<void>.value();
+
+  /// Returns the latency and throughput metrics of the storage calls. Nested
+  /// values are maps and numbers.
+  ///
+  /// Platforms without metrics return an empty map.
+  Future<Map<String, Object?>> getMetrics() =>
+      Future.value(<String, Object?>{});
+
+  /// Clears the recorded metrics.
+  Future<void> resetMetrics() => Future<void>.value();
+
+  /// Turns recording of metrics on or off.
+  Future<void> setMetricsEnabled(bool enabled) => Future<void>.value();
+
+  /// Whether the storage for [options] is initialized, so the next call does
+  /// not wait for key generation or unwrapping.
+  ///
+  /// Platforms without a separate initialization return true.
+  Future<bool> isReady({
+    required Map<String, String> options,
+  }) =>
+      Future.value(true);
 }
@@ -0,0 +1,34 @@
+part of '../flutter_secure_storage_platform_interface.dart';
+
+/// A write or delete of a single key, applied together with the other
+/// operations of a batch.
+@immutable
+class SecureStorageBatchOperation {
+  /// Writes [value] for [key].
+  const SecureStorageBatchOperation.write({
+    required this.key,
+    required String this.value,
+  });
+
+  /// Deletes the value of [key].
+  const SecureStorageBatchOperation.delete({required this.key}) : value = null;
+
+  final String key;
+
+  /// The written value, null for deletes.
+  final String? value;
+
+  bool get isDelete => value == null;
+
+  /// The operation as sent over the method channel.
+  Map<String, String> toMap() => <String, String>{
+        'type': isDelete ? 'delete' : 'write',
+        'key': key,
+        if (!isDelete) 'value': value!,
+      };
+
+  @override
+  String toString() => isDelete
+      ? 'SecureStorageBatchOperation.delete(key: $key)'
+      : 'SecureStorageBatchOperation.write(key: $key)';
+}
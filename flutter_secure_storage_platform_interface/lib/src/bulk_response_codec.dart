@@ -0,0 +1,127 @@
+part of '../flutter_secure_storage_platform_interface.dart';
+
+/// Compact encoding of the results of bulk methods, matching
+/// `BulkResponseCodec` on Android. Numbers are big-endian. A response starts
+/// with a status byte:
+///
+///  * success, followed by a type byte and the result. A map is the entry
+///    count followed by each key and value as strings. A boolean list is the
+///    element count followed by one byte per element, 1 for true. A string is
+///    sent when a store was reset after an error.
+///  * error, followed by the error code and message as strings.
+///
+/// A string is its UTF-8 length as an int, -1 for null, followed by the UTF-8
+/// bytes.
+class BulkResponseCodec {
+  BulkResponseCodec._();
+
+  static const int _success = 0;
+  static const int _error = 1;
+  static const int _typeMap = 1;
+  static const int _typeBooleanList = 2;
+  static const int _typeString = 3;
+
+  /// Decodes a response into a `Map<String, String>`, a `List<bool>` or a
+  /// [String], or throws the [PlatformException] it carries.
+  static Object decode(ByteData response) {
+    final reader = _BulkResponseReader(response);
+    if (reader.readByte() == _error) {
+      throw PlatformException(
+        code: reader.readString()!,
+        message: reader.readString(),
+      );
+    }
+    final type = reader.readByte();
+    switch (type) {
+      case _typeMap:
+        final count = reader.readInt();
+        final map = <String, String>{};
+        for (var i = 0; i < count; i++) {
+          map[reader.readString()!] = reader.readString()!;
+        }
+        return map;
+      case _typeBooleanList:
+        final count = reader.readInt();
+        return List<bool>.generate(count, (_) => reader.readByte() == 1);
+      case _typeString:
+        return reader.readString()!;
+      default:
+        throw FormatException('Unknown bulk response type $type');
+    }
+  }
+
+  /// Encodes [result] the way Android does, for tests of the decoder.
+  @visibleForTesting
+  static ByteData encodeSuccess(Object result) {
+    final buffer = WriteBuffer()..putUint8(_success);
+    if (result is Map<String, String>) {
+      buffer
+        ..putUint8(_typeMap)
+        ..putInt32(result.length, endian: Endian.big);
+      result.forEach((key, value) {
+        _putString(buffer, key);
+        _putString(buffer, value);
+      });
+    } else if (result is List<bool>) {
+      buffer
+        ..putUint8(_typeBooleanList)
+        ..putInt32(result.length, endian: Endian.big);
+      for (final value in result) {
+        buffer.putUint8(value ? 1 : 0);
+      }
+    } else if (result is String) {
+      buffer.putUint8(_typeString);
+      _putString(buffer, result);
+    } else {
+      throw ArgumentError.value(result, 'result', 'Unsupported bulk result');
+    }
+    return buffer.done();
+  }
+
+  /// Encodes an error the way Android does, for tests of the decoder.
+  @visibleForTesting
+  static ByteData encodeError(String code, String? message) {
+    final buffer = WriteBuffer()..putUint8(_error);
+    _putString(buffer, code);
+    _putString(buffer, message);
+    return buffer.done();
+  }
+
+  static void _putString(WriteBuffer buffer, String? value) {
+    if (value == null) {
+      buffer.putInt32(-1, endian: Endian.big);
+      return;
+    }
+    final bytes = utf8.encode(value);
+    buffer
+      ..putInt32(bytes.length, endian: Endian.big)
+      ..putUint8List(Uint8List.fromList(bytes));
+  }
+}
+
+class _BulkResponseReader {
+  _BulkResponseReader(this._data);
+
+  final ByteData _data;
+  int _offset = 0;
+
+  int readByte() => _data.getUint8(_offset++);
+
+  int readInt() {
+    final value = _data.getInt32(_offset);
+    _offset += 4;
+    return value;
+  }
+
+  String? readString() {
+    final length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    final value = utf8.decode(
+      _data.buffer.asUint8List(_data.offsetInBytes + _offset, length),
+    );
+    _offset += length;
+    return value;
+  }
+}
@@ -0,0 +1,24 @@
+part of '../flutter_secure_storage_platform_interface.dart';
+
+/// When a change is stored on disk.
+enum SecureStorageDurability {
+  /// The change is kept in memory and stored together with later changes,
+  /// after a short delay or on flush. Reads see it right away. A single write
+  /// or delete is buffered as a batch of one operation.
+  buffered,
+
+  /// The change is handed to the disk in the background. This is the default
+  /// of every call except flush.
+  apply,
+
+  /// The call completes once the change and all earlier ones are on disk.
+  commit,
+}
+
+/// The names of the durabilities sent over the method channel.
+const Map<SecureStorageDurability, String> _durabilityNames =
+    <SecureStorageDurability, String>{
+  SecureStorageDurability.buffered: 'buffered',
+  SecureStorageDurability.apply: 'apply',
+  SecureStorageDurability.commit: 'commit',
+};
@@ -3,16 +3,43 @@ part of '../flutter_secure_storage_platform_interface.dart';
 const MethodChannel _channel =
     MethodChannel('plugins.it_nomads.com/flutter_secure_storage');
 
+/// Answers readAll and batch on Android with [BulkResponseCodec], which is
+/// faster to decode than the standard codec for many entries.
+const String _bulkChannel =
+    'plugins.it_nomads.com/flutter_secure_storage/bulk';
+
 const EventChannel _eventChannel =
     EventChannel('plugins.it_nomads.com/flutter_secure_storage/events');
 
+/// The platform side keeps a single listener per event channel, so all streams
+/// share one subscription and filter the events in Dart.
+final Stream<dynamic> _events = _eventChannel.receiveBroadcastStream();
+
 class MethodChannelFlutterSecureStorage extends FlutterSecureStoragePlatform {
+  MethodChannelFlutterSecureStorage({@visibleForTesting bool? isAndroid})
+      : _isAndroid = isAndroid ?? (!kIsWeb && Platform.isAndroid);
+
+  /// Whether the Android only methods are sent over the channel.
+  final bool _isAndroid;
+
   @override
-  Stream<bool> get onCupertinoProtectedDataAvailabilityChanged => _eventChannel
-      .receiveBroadcastStream()
+  Stream<bool> get onCupertinoProtectedDataAvailabilityChanged => _events
       .where((event) => event is bool)
       .map((event) => event as bool);
 
+  @override
+  Stream<SecureStorageChange> onStorageChanged({String? prefix}) {
+    if (!_isAndroid) {
+      return const Stream.empty();
+    }
+
+    return _events
+        .map(SecureStorageChange.fromEvent)
+        .where((change) => change != null)
+        .map((change) => change!)
+        .where((change) => change.matches(prefix));
+  }
+
   @override
   Future<bool> isCupertinoProtectedDataAvailable() async {
     if (!kIsWeb && Platform.isIOS) {
@@ -76,6 +103,14 @@ class MethodChannelFlutterSecureStorage extends FlutterSecureStoragePlatform {
   Future<Map<String, String>> readAll({
     required Map<String, String> options,
   }) async {
+    final response = await _sendBulkMethod('readAll', {
+      'options': options,
+    });
+    if (response != null) {
+      final result = BulkResponseCodec.decode(response);
+      return result is Map<String, String> ? result : <String, String>{};
+    }
+
     final results = await _channel.invokeMethod<Map>(
       'readAll',
       {
@@ -97,4 +132,145 @@ class MethodChannelFlutterSecureStorage extends FlutterSecureStoragePlatform {
         'value': value,
         'options': options,
       });
+
+  @override
+  Future<List<bool>> batch({
+    required List<SecureStorageBatchOperation> operations,
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) async {
+    final arguments = <String, Object>{
+      'operations': operations.map((operation) => operation.toMap()).toList(),
+      if (durability != null) 'durability': _durabilityNames[durability]!,
+      'options': options,
+    };
+    final response = await _sendBulkMethod('batch', arguments);
+    if (response != null) {
+      final result = BulkResponseCodec.decode(response);
+      return result is List<bool> ? result : <bool>[];
+    }
+
+    final results = await _channel.invokeMethod<List>('batch', arguments);
+
+    return results?.cast<bool>() ?? <bool>[];
+  }
+
+  @override
+  Future<void> writeBytes({
+    required String key,
+    required Uint8List value,
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) =>
+      _channel.invokeMethod<void>('writeBytes', {
+        'key': key,
+        'value': value,
+        if (durability != null) 'durability': _durabilityNames[durability],
+        'options': options,
+      });
+
+  @override
+  Future<Uint8List?> readBytes({
+    required String key,
+    required Map<String, String> options,
+  }) =>
+      _channel.invokeMethod<Uint8List?>(
+        'readBytes',
+        {
+          'key': key,
+          'options': options,
+        },
+      );
+
+  @override
+  Future<List<String>> keys({
+    required Map<String, String> options,
+    String? prefix,
+  }) async {
+    if (!_isAndroid) {
+      return super.keys(options: options, prefix: prefix);
+    }
+
+    final results = await _channel.invokeMethod<List>('keys', {
+      if (prefix != null) 'prefix': prefix,
+      'options': options,
+    });
+
+    return results?.cast<String>() ?? <String>[];
+  }
+
+  @override
+  Future<void> flush({
+    required Map<String, String> options,
+    SecureStorageDurability? durability,
+  }) async {
+    if (!_isAndroid) {
+      return;
+    }
+
+    await _channel.invokeMethod<void>('flush', {
+      if (durability != null) 'durability': _durabilityNames[durability],
+      'options': options,
+    });
+  }
+
+  @override
+  Future<Map<String, Object?>> getMetrics() async {
+    if (!_isAndroid) {
+      return super.getMetrics();
+    }
+
+    final metrics = await _channel.invokeMethod<Map>('getMetrics');
+
+    return metrics?.cast<String, Object?>() ?? <String, Object?>{};
+  }
+
+  @override
+  Future<void> resetMetrics() async {
+    if (_isAndroid) {
+      await _channel.invokeMethod<void>('resetMetrics');
+    }
+  }
+
+  @override
+  Future<void> setMetricsEnabled(bool enabled) async {
+    if (_isAndroid) {
+      await _channel.invokeMethod<void>('setMetricsEnabled', {
+        'enabled': enabled,
+      });
+    }
+  }
+
+  @override
+  Future<bool> isReady({
+    required Map<String, String> options,
+  }) async {
+    if (!_isAndroid) {
+      return super.isReady(options: options);
+    }
+
+    return (await _channel.invokeMethod<bool>(
+      'isReady',
+      {
+        'options': options,
+      },
+    ))!;
+  }
+
+  /// Sends [method] over the bulk channel on Android, or returns null if it
+  /// has to be sent over the method channel instead.
+  Future<ByteData?> _sendBulkMethod(
+    String method,
+    Map<String, Object> arguments,
+  ) async {
+    if (!_isAndroid) {
+      return null;
+    }
+
+    return _channel.binaryMessenger.send(
+      _bulkChannel,
+      const StandardMethodCodec()
+          .encodeMethodCall(MethodCall(method, arguments)),
+    );
+  }
 }
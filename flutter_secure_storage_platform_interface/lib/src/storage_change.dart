@@ -0,0 +1,76 @@
+part of '../flutter_secure_storage_platform_interface.dart';
+
+/// The kind of change reported by [SecureStorageChange].
+enum SecureStorageChangeType {
+  /// A value was written.
+  write,
+
+  /// A value was deleted.
+  delete,
+
+  /// All values of the storage were deleted.
+  clear,
+
+  /// The values were migrated to another storage format.
+  migration,
+}
+
+/// A committed change of the storage.
+@immutable
+class SecureStorageChange {
+  const SecureStorageChange({
+    required this.type,
+    required this.key,
+    required this.sharedPreferencesName,
+  });
+
+  /// Creates a change from an event sent by the platform, or returns null if
+  /// the event is not a storage change.
+  static SecureStorageChange? fromEvent(Object? event) {
+    if (event is! Map) {
+      return null;
+    }
+    final type = _parseType(event['type']);
+    if (type == null) {
+      return null;
+    }
+    return SecureStorageChange(
+      type: type,
+      key: event['key'] as String?,
+      sharedPreferencesName: event['sharedPreferencesName'] as String?,
+    );
+  }
+
+  static SecureStorageChangeType? _parseType(Object? type) {
+    switch (type) {
+      case 'write':
+        return SecureStorageChangeType.write;
+      case 'delete':
+        return SecureStorageChangeType.delete;
+      case 'clear':
+        return SecureStorageChangeType.clear;
+      case 'migration':
+        return SecureStorageChangeType.migration;
+      default:
+        return null;
+    }
+  }
+
+  final SecureStorageChangeType type;
+
+  /// The changed key, null for [SecureStorageChangeType.clear] and
+  /// [SecureStorageChangeType.migration].
+  final String? key;
+
+  /// The name of the storage that changed.
+  final String? sharedPreferencesName;
+
+  /// Whether the change concerns keys starting with [prefix]. Clear and
+  /// migration changes concern every key.
+  bool matches(String? prefix) =>
+      prefix == null || key == null || key!.startsWith(prefix);
+
+  @override
+  String toString() =>
+      'SecureStorageChange(type: $type, key: $key, sharedPreferencesName: $sharedPreferencesName)';
+}
@@ -1,3 +1,5 @@
+import 'dart:typed_data';
+
 import 'package:flutter/services.dart';
 import 'package:flutter_secure_storage_platform_interface/flutter_secure_storage_platform_interface.dart';
 import 'package:flutter_test/flutter_test.dart';
@@ -39,16 +41,36 @@ void main() {
   group('MethodChannelFutterSecureStorage', () {
     const channel =
         MethodChannel('plugins.it_nomads.com/flutter_secure_storage');
+    const bulkChannel = 'plugins.it_nomads.com/flutter_secure_storage/bulk';
 
     final log = <MethodCall>[];
 
-    Future<bool?>? handler(MethodCall methodCall) async {
+    Future<Object?>? handler(MethodCall methodCall) async {
       log.add(methodCall);
 
       if (methodCall.method == 'containsKey') {
         return true;
       } else if (methodCall.method == 'isProtectedDataAvailable') {
         return true;
+      } else if (methodCall.method == 'batch') {
+        return <bool>[true, false];
+      } else if (methodCall.method == 'readAll') {
+        return <String, String>{
+          'user.name': 'test',
+          'app.theme': 'dark',
+          'user.id': '1',
+        };
+      } else if (methodCall.method == 'isReady') {
+        return false;
+      } else if (methodCall.method == 'keys') {
+        return <String>['user.id'];
+      } else if (methodCall.method == 'getMetrics') {
+        return <String, Object?>{
+          'enabled': true,
+          'executor': <String, Object?>{'queueDepth': 0},
+        };
+      } else if (methodCall.method == 'readBytes') {
+        return Uint8List.fromList(<int>[1, 2, 3]);
       }
 
       return null;
@@ -58,6 +80,7 @@ void main() {
         .setMockMethodCallHandler(channel, handler);
 
     final storage = MethodChannelFlutterSecureStorage();
+    final androidStorage = MethodChannelFlutterSecureStorage(isAndroid: true);
     const options = <String, String>{};
     const key = 'test_key';
 
@@ -65,6 +88,80 @@ void main() {
       log.clear();
     });
 
+    group('bulk channel', () {
+      final bulkLog = <MethodCall>[];
+
+      setUp(() {
+        TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger
+            .setMockMessageHandler(bulkChannel, (message) async {
+          final call = const StandardMethodCodec().decodeMethodCall(message);
+          bulkLog.add(call);
+          if (call.method == 'readAll') {
+            return BulkResponseCodec.encodeSuccess(
+              <String, String>{key: 'test'},
+            );
+          } else if (call.method == 'batch') {
+            return BulkResponseCodec.encodeSuccess(<bool>[false, true]);
+          }
+          return null;
+        });
+      });
+
+      tearDown(() {
+        TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger
+            .setMockMessageHandler(bulkChannel, null);
+        bulkLog.clear();
+      });
+
+      test('readAll on Android', () async {
+        final result = await androidStorage.readAll(options: options);
+
+        expect(result, <String, String>{key: 'test'});
+        expect(log, isEmpty);
+        expect(
+          bulkLog,
+          <Matcher>[
+            isMethodCall(
+              'readAll',
+              arguments: <String, Object>{'options': options},
+            ),
+          ],
+        );
+      });
+
+      test('batch on Android', () async {
+        final result = await androidStorage.batch(
+          operations: const [
+            SecureStorageBatchOperation.delete(key: key),
+            SecureStorageBatchOperation.write(key: key, value: 'test'),
+          ],
+          options: options,
+        );
+
+        expect(result, <bool>[false, true]);
+        expect(log, isEmpty);
+        expect(bulkLog.single.method, 'batch');
+      });
+
+      test('falls back to the method channel without a bulk reply', () async {
+        TestDefaultBinaryMessengerBinding.instance.defaultBinaryMessenger
+            .setMockMessageHandler(bulkChannel, null);
+
+        final result = await androidStorage.readAll(options: options);
+
+        expect(result, hasLength(3));
+        expect(
+          log,
+          <Matcher>[
+            isMethodCall(
+              'readAll',
+              arguments: <String, Object>{'options': options},
+            ),
+          ],
+        );
+      });
+    });
+
     test('read', () async {
       await storage.read(key: key, options: options);
 
@@ -173,10 +270,275 @@ void main() {
       );
     });
 
+    test('batch', () async {
+      final result = await storage.batch(
+        operations: const [
+          SecureStorageBatchOperation.write(key: key, value: 'test'),
+          SecureStorageBatchOperation.delete(key: 'other_key'),
+        ],
+        options: options,
+        durability: SecureStorageDurability.buffered,
+      );
+
+      expect(result, <bool>[true, false]);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'batch',
+            arguments: <String, Object>{
+              'operations': <Map<String, String>>[
+                <String, String>{'type': 'write', 'key': key, 'value': 'test'},
+                <String, String>{'type': 'delete', 'key': 'other_key'},
+              ],
+              'durability': 'buffered',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('writeBytes', () async {
+      final value = Uint8List.fromList(<int>[1, 2, 3]);
+
+      await storage.writeBytes(key: key, value: value, options: options);
+
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'writeBytes',
+            arguments: <String, Object>{
+              'key': key,
+              'value': value,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('readBytes', () async {
+      final result = await storage.readBytes(key: key, options: options);
+
+      expect(result, <int>[1, 2, 3]);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'readBytes',
+            arguments: <String, Object>{
+              'key': key,
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('keys', () async {
+      expect(
+        await storage.keys(options: options),
+        <String>['app.theme', 'user.id', 'user.name'],
+      );
+      expect(
+        await storage.keys(options: options, prefix: 'user.'),
+        <String>['user.id', 'user.name'],
+      );
+    });
+
+    test('keys on Android', () async {
+      final result =
+          await androidStorage.keys(options: options, prefix: 'user.');
+
+      expect(result, <String>['user.id']);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'keys',
+            arguments: <String, Object>{
+              'prefix': 'user.',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('flush on Android', () async {
+      await androidStorage.flush(
+        options: options,
+        durability: SecureStorageDurability.apply,
+      );
+
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'flush',
+            arguments: <String, Object>{
+              'durability': 'apply',
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
+    test('flush is a no-op on platforms without buffered writes', () async {
+      await storage.flush(options: options);
+
+      expect(log, isEmpty);
+    });
+
+    test('metrics', () async {
+      await androidStorage.setMetricsEnabled(true);
+      final metrics = await androidStorage.getMetrics();
+      await androidStorage.resetMetrics();
+
+      expect(metrics['enabled'], true);
+      expect(metrics['executor'], <String, Object?>{'queueDepth': 0});
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'setMetricsEnabled',
+            arguments: <String, Object>{'enabled': true},
+          ),
+          isMethodCall('getMetrics', arguments: null),
+          isMethodCall('resetMetrics', arguments: null),
+        ],
+      );
+    });
+
+    test('metrics are empty on platforms without them', () async {
+      expect(await storage.getMetrics(), isEmpty);
+      expect(log, isEmpty);
+    });
+
+    test('isReady', () async {
+      expect(await androidStorage.isReady(options: options), false);
+      expect(await storage.isReady(options: options), true);
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'isReady',
+            arguments: <String, Object>{
+              'options': options,
+            },
+          ),
+        ],
+      );
+    });
+
     test('isProtectedDataAvailable', () async {
       final result = await storage.isCupertinoProtectedDataAvailable();
 
       expect(result, true);
     });
   });
+
+  group('BulkResponseCodec', () {
+    test('round trips a map', () {
+      const map = <String, String>{
+        'a': '1',
+        'empty': '',
+        'unicode': 'ä€😀',
+      };
+
+      expect(
+        BulkResponseCodec.decode(BulkResponseCodec.encodeSuccess(map)),
+        map,
+      );
+    });
+
+    test('round trips a boolean list', () {
+      expect(
+        BulkResponseCodec.decode(
+          BulkResponseCodec.encodeSuccess(<bool>[true, false, true]),
+        ),
+        <bool>[true, false, true],
+      );
+    });
+
+    test('round trips a string', () {
+      expect(
+        BulkResponseCodec.decode(
+          BulkResponseCodec.encodeSuccess('Data has been reset'),
+        ),
+        'Data has been reset',
+      );
+    });
+
+    test('decodes an error', () {
+      expect(
+        () => BulkResponseCodec.decode(
+          BulkResponseCodec.encodeError('Detached', null),
+        ),
+        throwsA(
+          isA<PlatformException>()
+              .having((e) => e.code, 'code', 'Detached')
+              .having((e) => e.message, 'message', isNull),
+        ),
+      );
+    });
+
+    test('decodes the Android layout', () {
+      // Success, map, one entry: "a" -> "b".
+      final response = Uint8List.fromList(<int>[
+        0, 1, //
+        0, 0, 0, 1, //
+        0, 0, 0, 1, 0x61, //
+        0, 0, 0, 1, 0x62,
+      ]);
+
+      expect(
+        BulkResponseCodec.decode(ByteData.sublistView(response)),
+        <String, String>{'a': 'b'},
+      );
+    });
+  });
+
+  group('SecureStorageChange', () {
+    test('fromEvent', () {
+      final change = SecureStorageChange.fromEvent(<Object?, Object?>{
+        'type': 'write',
+        'key': 'test_key',
+        'sharedPreferencesName': 'FlutterSecureStorage',
+      });
+
+      expect(change?.type, SecureStorageChangeType.write);
+      expect(change?.key, 'test_key');
+      expect(change?.sharedPreferencesName, 'FlutterSecureStorage');
+    });
+
+    test('matches', () {
+      const write = SecureStorageChange(
+        type: SecureStorageChangeType.write,
+        key: 'user.name',
+        sharedPreferencesName: 'FlutterSecureStorage',
+      );
+      const clear = SecureStorageChange(
+        type: SecureStorageChangeType.clear,
+        key: null,
+        sharedPreferencesName: 'FlutterSecureStorage',
+      );
+
+      expect(write.matches(null), true);
+      expect(write.matches('user.'), true);
+      expect(write.matches('app.'), false);
+      expect(clear.matches('app.'), true);
+    });
+
+    test('fromEvent ignores other events', () {
+      expect(SecureStorageChange.fromEvent(true), isNull);
+      expect(
+        SecureStorageChange.fromEvent(<Object?, Object?>{'type': 'unknown'}),
+        isNull,
+      );
+    });
+  });
 }